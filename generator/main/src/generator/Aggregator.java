@@ -0,0 +1,159 @@
+package generator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// Aggregator class works out statistics of each written column over fixed intervals of TIME as the rows are written, and writes a row of them
+// for each interval to a file of its own. Only the samples of a column are used, so a column sampled less often than the interval has empty intervals
+public class Aggregator {
+
+   // STATS: The statistics that can be worked out for each interval
+   public static final List<String> STATS = Arrays.asList("mean", "min", "max", "first", "last", "count");
+
+   // data: The dataset that rows are aggregated from
+   private Dataset data;
+   // columns: The dataset columns that are aggregated, the written columns apart from TIME
+   private int[] columns;
+   // stats: The index in STATS of each statistic written for a column
+   private int[] stats;
+   // rows: The number of dataset rows in each interval
+   private int rows;
+   // interval: The interval of the current row of statistics, counted from the first row of the dataset (-1 before the first row)
+   private long interval = -1;
+   // sum, min, max, first, last: The statistics of each column so far in the current interval
+   private double[] sum;
+   private double[] min;
+   private double[] max;
+   private double[] first;
+   private double[] last;
+   // count: The number of samples of each column so far in the current interval
+   private long[] count;
+   // result: A row of statistics for each interval, the only row kept is the one being written
+   private Dataset result;
+   // writer: The file the statistics are written to
+   private RollingWriter writer;
+
+   /*
+    * Aggregator: Constructor that writes the statistics of a given dataset to a file given its name without the '.csv' extension, the start date,
+    * the process period, the significant digits, the interval in seconds and the names of the statistics
+    * The interval must be a whole number of process periods, and starts on multiples of itself from the start date
+    */
+   public Aggregator(String name, Dataset data, String startDate, int period, int digits, int seconds, List<String> names) throws IOException {
+      if (seconds <= 0 || seconds % period != 0)
+         throw new IllegalArgumentException("The aggregate interval must be a whole number of process periods of " + period + " s");
+      this.data = data;
+      rows = seconds / period;
+      columns = new int[data.columns()];
+      int written = 0;
+      for (int col = 2; col <= data.columns(); col++){
+         if (data.isWritten(col))
+            columns[written++] = col;
+      }
+      columns = Arrays.copyOf(columns, written);
+      stats = new int[names.size()];
+      for (int i = 0; i < stats.length; i++){
+         stats[i] = STATS.indexOf(names.get(i));
+         if (stats[i] < 0)
+            throw new IllegalArgumentException("Unknown statistic " + names.get(i) + ", the statistics are " + STATS);
+      }
+      sum = new double[written];
+      min = new double[written];
+      max = new double[written];
+      first = new double[written];
+      last = new double[written];
+      count = new long[written];
+
+      // Each statistic is a column named after the column and the statistic, a row of the result is an interval
+      result = new Dataset(1 + written * stats.length, data.isSingle(), 1);
+      result.setHeading(1, "TIME", "");
+      for (int c = 0; c < written; c++){
+         for (int s = 0; s < stats.length; s++)
+            result.setHeading(2 + c * stats.length + s, data.name(columns[c]) + "_" + STATS.get(stats[s]), data.description(columns[c]));
+      }
+      writer = new RollingWriter(name, new RowFormatter(result, startDate, seconds, digits), 0, 0, 0, seconds);
+   }
+
+   /*
+    * add: Method that adds the samples of a given row, rows are added in order and a row in a later interval writes the interval before it
+    */
+   public void add(int row) throws IOException {
+      long at = (row - Dataset.FIRST_ROW) / rows;
+      if (at != interval){
+         if (interval >= 0)
+            writeInterval();
+         interval = at;
+         Arrays.fill(count, 0);
+      }
+      for (int c = 0; c < columns.length; c++){
+         int col = columns[c];
+         if (!data.isSample(row, col))
+            continue;
+         double value = data.get(row, col);
+         if (Double.isNaN(value))
+            continue;
+         if (count[c] == 0){
+            sum[c] = 0;
+            min[c] = value;
+            max[c] = value;
+            first[c] = value;
+         }
+         sum[c] += value;
+         min[c] = Math.min(min[c], value);
+         max[c] = Math.max(max[c], value);
+         last[c] = value;
+         count[c]++;
+      }
+   }
+
+   /*
+    * writeInterval: Method that writes the statistics of the current interval, a column without samples in the interval is left empty apart from its count
+    */
+   private void writeInterval() throws IOException {
+      int row = (int) (Dataset.FIRST_ROW + interval);
+      for (int c = 0; c < columns.length; c++){
+         for (int s = 0; s < stats.length; s++){
+            double value;
+            switch (stats[s]){
+               case 0:
+                  value = sum[c] / count[c];
+                  break;
+               case 1:
+                  value = min[c];
+                  break;
+               case 2:
+                  value = max[c];
+                  break;
+               case 3:
+                  value = first[c];
+                  break;
+               case 4:
+                  value = last[c];
+                  break;
+               default:
+                  value = count[c];
+            }
+            if (count[c] == 0 && stats[s] != 5)
+               value = Double.NaN;
+            result.set(row, 2 + c * stats.length + s, value);
+         }
+      }
+      writer.write(row);
+   }
+
+   /*
+    * close: Method that writes the last interval, which only has the rows added to it, and closes the file
+    */
+   public void close() throws IOException {
+      if (interval >= 0)
+         writeInterval();
+      writer.close();
+   }
+
+   /*
+    * delete: Method that closes and removes the file, for a dataset that is not finished
+    */
+   public void delete(){
+      writer.delete();
+   }
+}
@@ -0,0 +1,478 @@
+package generator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// ArrowWriter class writes dataset rows to a file in the Arrow IPC file format, so they can be memory mapped by readers without parsing text
+// The format is written directly (https://arrow.apache.org/docs/format/Columnar.html), without the Arrow libraries
+public class ArrowWriter {
+
+   // BATCH_ROWS: The number of rows in each record batch
+   private static final int BATCH_ROWS = 65536;
+   // MAGIC: The bytes at the start and end of an Arrow file
+   private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+   // CONTINUATION: The marker before the length of each message
+   private static final int CONTINUATION = 0xFFFFFFFF;
+   // V5: The Arrow metadata version
+   private static final short V5 = 4;
+   // The message header types
+   private static final byte SCHEMA = 1;
+   private static final byte RECORD_BATCH = 3;
+   // The column types
+   private static final byte FLOATING_POINT = 3;
+   private static final byte TIMESTAMP = 10;
+
+   // data: The dataset that rows are written from
+   private Dataset data;
+   // fields: The dataset columns that are written, starting with the TIME column
+   private int[] fields;
+   // file: The file being written
+   private File file;
+   // out: The stream of the file
+   private OutputStream out;
+   // position: The number of bytes written to the file
+   private long position;
+   // start: The TIME of the first row in seconds since 1970
+   private long start;
+   // period: The process period in seconds
+   private int period;
+   // schema: The column names and types, written at the start of the file and again in the footer
+   private Table schema;
+   // firstRow: The first row of the current batch
+   private int firstRow;
+   // count: The number of rows in the current batch
+   private int count;
+   // values, singles: The values of each written column in the current batch by its place in fields, as floats when the dataset is float32, NaN for an empty value
+   private double[][] values;
+   private float[][] singles;
+   // blocks: The position, metadata length and body length of each record batch
+   private List<long[]> blocks = new ArrayList<>();
+
+   public ArrowWriter(String name, Dataset data, String startDate, int period) throws IOException {
+      this.data = data;
+      this.period = period;
+      DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss");
+      start = LocalDateTime.parse(startDate + " 00:00:00", formatter).toEpochSecond(ZoneOffset.UTC);
+      fields = IntStream.rangeClosed(1, data.columns()).filter(col -> col == 1 || data.isWritten(col)).toArray();
+      // The TIME column is worked out from the row, so it has no values
+      if (data.isSingle()){
+         singles = new float[fields.length][];
+         for (int f = 1; f < fields.length; f++)
+            singles[f] = new float[BATCH_ROWS];
+      }
+      else {
+         values = new double[fields.length][];
+         for (int f = 1; f < fields.length; f++)
+            values[f] = new double[BATCH_ROWS];
+      }
+      schema = schema();
+      file = new File(name + ".arrow");
+      out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+      write(MAGIC);
+      write(new byte[2]);
+      message(SCHEMA, schema, 0);
+   }
+
+   /*
+    * write: Method that adds a given row to the current record batch, writing the batch once it is full
+    * Rows between the samples of a column are empty, so they are marked as null in its validity bitmap
+    */
+   public void write(int row) throws IOException {
+      if (count == 0)
+         firstRow = row;
+      for (int f = 1; f < fields.length; f++){
+         int col = fields[f];
+         double value = data.isSample(row, col) ? data.get(row, col) : Double.NaN;
+         if (singles != null)
+            singles[f][count] = (float) value;
+         else
+            values[f][count] = value;
+      }
+      count++;
+      if (count == BATCH_ROWS)
+         writeBatch();
+   }
+
+   /*
+    * close: Method that writes the last record batch and the footer that lists the batches
+    */
+   public void close() throws IOException {
+      if (count > 0)
+         writeBatch();
+      writeInt(CONTINUATION);
+      writeInt(0);
+      byte[] structs = new byte[24 * blocks.size()];
+      ByteBuffer buffer = ByteBuffer.wrap(structs).order(ByteOrder.LITTLE_ENDIAN);
+      for (long[] block : blocks){
+         buffer.putLong(block[0]);
+         buffer.putInt((int) block[1]);
+         buffer.putInt(0);
+         buffer.putLong(block[2]);
+      }
+      Table footer = new Table(4);
+      footer.scalar(0, 2, V5);
+      footer.offset(1, schema);
+      footer.offset(2, new Structs(new byte[0], 0));
+      footer.offset(3, new Structs(structs, blocks.size()));
+      byte[] bytes = footer.finish();
+      write(bytes);
+      writeInt(bytes.length);
+      write(MAGIC);
+      out.close();
+   }
+
+   /*
+    * delete: Method that closes and removes the file, for a dataset that is not finished
+    */
+   public void delete(){
+      try {
+         out.close();
+      }
+      catch (IOException e){
+         // The file is removed anyway
+      }
+      file.delete();
+   }
+
+   /*
+    * schema: Method that describes the columns, TIME as a timestamp in seconds and the values as float64 or float32 with their descriptions
+    */
+   private Table schema(){
+      List<Node> columns = new ArrayList<>();
+      for (int col : fields){
+         Table type = new Table(2);
+         if (col == 1)
+            type.scalar(0, 2, 0);
+         else
+            type.scalar(0, 2, data.isSingle() ? 1 : 2);
+         Table field = new Table(7);
+         field.offset(0, new Text(data.name(col)));
+         field.scalar(1, 1, col == 1 ? 0 : 1);
+         field.scalar(2, 1, col == 1 ? TIMESTAMP : FLOATING_POINT);
+         field.offset(3, type);
+         field.offset(5, new Nodes(new ArrayList<>()));
+         if (data.description(col) != null){
+            Table description = new Table(2);
+            description.offset(0, new Text("description"));
+            description.offset(1, new Text(data.description(col)));
+            List<Node> metadata = new ArrayList<>();
+            metadata.add(description);
+            field.offset(6, new Nodes(metadata));
+         }
+         columns.add(field);
+      }
+      Table schema = new Table(4);
+      schema.scalar(0, 2, 0);
+      schema.offset(1, new Nodes(columns));
+      return schema;
+   }
+
+   /*
+    * writeBatch: Method that writes the rows of the current batch as a record batch
+    * Each column has a validity bitmap, left empty when the column has no nulls, followed by its values
+    */
+   private void writeBatch() throws IOException {
+      int columns = fields.length;
+      int bytes = data.isSingle() ? 4 : 8;
+      int bitmap = pad(((count + 7) / 8));
+      ByteBuffer nodes = ByteBuffer.allocate(16 * columns).order(ByteOrder.LITTLE_ENDIAN);
+      ByteBuffer buffers = ByteBuffer.allocate(32 * columns).order(ByteOrder.LITTLE_ENDIAN);
+      int[] nulls = new int[columns];
+      long body = 0;
+      for (int f = 0; f < columns; f++){
+         for (int i = 0; f > 0 && i < count; i++){
+            if (isNull(f, i))
+               nulls[f]++;
+         }
+         nodes.putLong(count);
+         nodes.putLong(nulls[f]);
+         int valid = nulls[f] > 0 ? bitmap : 0;
+         int length = pad(count * (f == 0 ? 8 : bytes));
+         buffers.putLong(body).putLong(valid);
+         buffers.putLong(body + valid).putLong(length);
+         body += valid + length;
+      }
+      Table batch = new Table(4);
+      batch.scalar(0, 8, count);
+      batch.offset(1, new Structs(nodes.array(), columns));
+      batch.offset(2, new Structs(buffers.array(), 2 * columns));
+      long offset = position;
+      int metadata = message(RECORD_BATCH, batch, body);
+      blocks.add(new long[] {offset, metadata, body});
+
+      ByteBuffer column = ByteBuffer.allocate(pad(count * 8)).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < count; i++)
+         column.putLong(start + (long) (firstRow + i - Dataset.FIRST_ROW) * period);
+      write(column.array());
+      byte[] validity = new byte[bitmap];
+      for (int f = 1; f < columns; f++){
+         if (nulls[f] > 0){
+            Arrays.fill(validity, (byte) 0);
+            for (int i = 0; i < count; i++){
+               if (!isNull(f, i))
+                  validity[i >> 3] |= 1 << (i & 7);
+            }
+            write(validity);
+         }
+         column = ByteBuffer.allocate(pad(count * bytes)).order(ByteOrder.LITTLE_ENDIAN);
+         // Null values are written as 0, readers only look at the validity bitmap
+         for (int i = 0; i < count; i++){
+            if (singles != null)
+               column.putFloat(Float.isNaN(singles[f][i]) ? 0 : singles[f][i]);
+            else
+               column.putDouble(Double.isNaN(values[f][i]) ? 0 : values[f][i]);
+         }
+         write(column.array());
+      }
+      count = 0;
+   }
+
+   // isNull: Method for checking if the value of a given row of the current batch is empty, given the place of its column in fields
+   private boolean isNull(int f, int i){
+      return singles != null ? Float.isNaN(singles[f][i]) : Double.isNaN(values[f][i]);
+   }
+
+   /*
+    * message: Method that writes a message with a given header type, header and body length, returning the length of its metadata
+    * The metadata is the continuation marker, its length and the header padded to 8 bytes, the body is written after it
+    */
+   private int message(byte type, Table header, long body) throws IOException {
+      Table message = new Table(5);
+      message.scalar(0, 2, V5);
+      message.scalar(1, 1, type);
+      message.offset(2, header);
+      message.scalar(3, 8, body);
+      byte[] bytes = message.finish();
+      int length = pad(bytes.length + 8) - 8;
+      writeInt(CONTINUATION);
+      writeInt(length);
+      write(bytes);
+      write(new byte[length - bytes.length]);
+      return length + 8;
+   }
+
+   // pad: Method for rounding a length up to a multiple of 8 bytes
+   private static int pad(int length){
+      return (length + 7) & ~7;
+   }
+
+   // write: Method for writing bytes to the file
+   private void write(byte[] bytes) throws IOException {
+      out.write(bytes);
+      position += bytes.length;
+   }
+
+   // writeInt: Method for writing a little endian int to the file
+   private void writeInt(int value) throws IOException {
+      write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+   }
+
+   // Node class is an object of a flatbuffer, the format of the Arrow metadata (https://flatbuffers.dev/flatbuffers_internals.html)
+   // Objects are written after the object that refers to them, so every offset points forward
+   private abstract static class Node {
+      /*
+       * write: Method that writes the object, returning the position that offsets to it refer to
+       */
+      abstract int write(Flat out);
+   }
+
+   // Flat class holds the bytes of a flatbuffer as it is written
+   private static class Flat {
+      // bytes: The flatbuffer
+      ByteBuffer bytes = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+      /*
+       * reserve: Method that makes room for a given number of bytes
+       */
+      void reserve(int length){
+         if (bytes.remaining() < length){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+         }
+      }
+
+      /*
+       * align: Method that adds zero bytes until the position is a multiple of a given size, plus a given remainder
+       */
+      void align(int size, int remainder){
+         reserve(size);
+         while (bytes.position() % size != remainder)
+            bytes.put((byte) 0);
+      }
+
+      /*
+       * offset: Method that writes the offset from a given position to a given object
+       */
+      void offset(int at, int target){
+         bytes.putInt(at, target - at);
+      }
+   }
+
+   // Table class is a flatbuffer table, its fields are found through a vtable written before it
+   private static class Table extends Node {
+      // sizes: The size of each scalar field, 4 for an offset and 0 when the field is not set
+      int[] sizes;
+      // scalars: The value of each scalar field
+      long[] scalars;
+      // children: The object of each offset field
+      Node[] children;
+
+      Table(int fields){
+         sizes = new int[fields];
+         scalars = new long[fields];
+         children = new Node[fields];
+      }
+
+      void scalar(int field, int size, long value){
+         sizes[field] = size;
+         scalars[field] = value;
+      }
+
+      void offset(int field, Node child){
+         sizes[field] = 4;
+         children[field] = child;
+      }
+
+      /*
+       * finish: Method that returns a flatbuffer with this table as its root
+       */
+      byte[] finish(){
+         Flat out = new Flat();
+         out.reserve(4);
+         out.bytes.putInt(0);
+         out.offset(0, write(out));
+         out.align(8, 0);
+         byte[] bytes = new byte[out.bytes.position()];
+         out.bytes.flip();
+         out.bytes.get(bytes);
+         return bytes;
+      }
+
+      @Override
+      int write(Flat out){
+         // Fields are placed largest first after the vtable offset, each on a multiple of its size
+         int[] at = new int[sizes.length];
+         int size = 4;
+         for (int width = 8; width >= 1; width /= 2){
+            for (int field = 0; field < sizes.length; field++){
+               if (sizes[field] == width){
+                  size = (size + width - 1) / width * width;
+                  at[field] = size;
+                  size += width;
+               }
+            }
+         }
+         out.align(2, 0);
+         out.reserve(4 + 2 * sizes.length);
+         int vtable = out.bytes.position();
+         out.bytes.putShort((short) (4 + 2 * sizes.length));
+         out.bytes.putShort((short) size);
+         for (int field = 0; field < sizes.length; field++)
+            out.bytes.putShort((short) at[field]);
+         out.align(8, 0);
+         out.reserve(size);
+         int table = out.bytes.position();
+         out.bytes.putInt(table - vtable);
+         out.bytes.put(new byte[size - 4]);
+         for (int field = 0; field < sizes.length; field++){
+            int position = table + at[field];
+            if (children[field] != null)
+               continue;
+            if (sizes[field] == 1)
+               out.bytes.put(position, (byte) scalars[field]);
+            else if (sizes[field] == 2)
+               out.bytes.putShort(position, (short) scalars[field]);
+            else if (sizes[field] == 4)
+               out.bytes.putInt(position, (int) scalars[field]);
+            else if (sizes[field] == 8)
+               out.bytes.putLong(position, scalars[field]);
+         }
+         for (int field = 0; field < sizes.length; field++){
+            if (children[field] != null)
+               out.offset(table + at[field], children[field].write(out));
+         }
+         return table;
+      }
+   }
+
+   // Nodes class is a flatbuffer vector of tables
+   private static class Nodes extends Node {
+      // items: The tables of the vector
+      List<Node> items;
+
+      Nodes(List<Node> items){
+         this.items = items;
+      }
+
+      @Override
+      int write(Flat out){
+         out.align(4, 0);
+         out.reserve(4 + 4 * items.size());
+         int vector = out.bytes.position();
+         out.bytes.putInt(items.size());
+         out.bytes.put(new byte[4 * items.size()]);
+         for (int i = 0; i < items.size(); i++)
+            out.offset(vector + 4 + 4 * i, items.get(i).write(out));
+         return vector;
+      }
+   }
+
+   // Structs class is a flatbuffer vector of structs that hold longs, so the structs start on a multiple of 8 bytes
+   private static class Structs extends Node {
+      // bytes: The structs
+      byte[] bytes;
+      // count: The number of structs
+      int count;
+
+      Structs(byte[] bytes, int count){
+         this.bytes = bytes;
+         this.count = count;
+      }
+
+      @Override
+      int write(Flat out){
+         out.align(8, 4);
+         out.reserve(4 + bytes.length);
+         int vector = out.bytes.position();
+         out.bytes.putInt(count);
+         out.bytes.put(bytes);
+         return vector;
+      }
+   }
+
+   // Text class is a flatbuffer string
+   private static class Text extends Node {
+      // bytes: The UTF-8 bytes of the string
+      byte[] bytes;
+
+      Text(String text){
+         bytes = text.getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      int write(Flat out){
+         out.align(4, 0);
+         out.reserve(5 + bytes.length);
+         int text = out.bytes.position();
+         out.bytes.putInt(bytes.length);
+         out.bytes.put(bytes);
+         out.bytes.put((byte) 0);
+         return text;
+      }
+   }
+}
@@ -0,0 +1,190 @@
+package generator;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+// AsyncWriter class formats rows into a few reusable buffers that a separate thread writes out, so rows can be calculated while earlier rows are on their way to disk
+public class AsyncWriter {
+
+   // BUFFERS: The number of buffers, which limits how far the calculation can get ahead of the disk
+   private static final int BUFFERS = 4;
+   // BUFFER_ROWS: The number of rows in each buffer
+   private static final int BUFFER_ROWS = 1024;
+
+   // Buffer class holds a block of formatted rows
+   private static class Buffer {
+      // formatter: The formatter that holds the text of the rows
+      RowFormatter formatter;
+      // firstRow: The first row in the buffer
+      int firstRow;
+      // ends: The end of each row in the text
+      int[] ends = new int[BUFFER_ROWS];
+      // count: The number of rows in the buffer
+      int count;
+   }
+
+   // END: Passed to the writing thread after the last buffer
+   private static final Buffer END = new Buffer();
+   // FLUSH: Passed to the writing thread to flush the rows written so far to disk
+   private static final Buffer FLUSH = new Buffer();
+
+   // writer: The writer that the rows are written to
+   private RollingWriter writer;
+   // filled: Buffers waiting to be written
+   private BlockingQueue<Buffer> filled = new ArrayBlockingQueue<>(BUFFERS + 1);
+   // empty: Buffers that are free to be filled
+   private BlockingQueue<Buffer> empty = new ArrayBlockingQueue<>(BUFFERS);
+   // current: The buffer being filled
+   private Buffer current;
+   // thread: The thread that writes the filled buffers
+   private Thread thread;
+   // flushed: Released by the writing thread when a flush is done
+   private Semaphore flushed = new Semaphore(0);
+   // error: The first error of the writing thread
+   private volatile IOException error;
+
+   public AsyncWriter(RollingWriter writer, Dataset data, String startDate, int period, int digits, boolean longFormat){
+      this.writer = writer;
+      for (int i = 0; i < BUFFERS; i++){
+         Buffer buffer = new Buffer();
+         buffer.formatter = new RowFormatter(data, startDate, period, digits, longFormat);
+         empty.add(buffer);
+      }
+      current = empty.poll();
+      thread = new Thread(this::drain, "Dataset writer");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /*
+    * write: Method that formats a given row, the row is read straight away so it can be changed once this returns
+    * Waits for a free buffer when all of them are waiting to be written
+    */
+   public void write(int row) throws IOException {
+      if (current.count == 0)
+         current.firstRow = row;
+      current.formatter.appendRow(row);
+      current.ends[current.count++] = current.formatter.length();
+      if (current.count == BUFFER_ROWS)
+         send();
+   }
+
+   /*
+    * flush: Method that waits until every row given so far is written to disk
+    */
+   public void flush() throws IOException {
+      if (current.count > 0)
+         send();
+      put(filled, FLUSH);
+      try {
+         flushed.acquire();
+      }
+      catch (InterruptedException e){
+         throw new IOException("Interrupted while writing", e);
+      }
+      if (error != null)
+         throw error;
+   }
+
+   /*
+    * close: Method that writes the remaining rows, waits for the writing thread and closes the writer
+    */
+   public void close() throws IOException {
+      if (current.count > 0)
+         send();
+      put(filled, END);
+      try {
+         thread.join();
+      }
+      catch (InterruptedException e){
+         throw new IOException("Interrupted while writing", e);
+      }
+      if (error != null)
+         throw error;
+      writer.close();
+   }
+
+   /*
+    * abort: Method that stops the writing thread without closing the writer, for a dataset that is not finished
+    */
+   public void abort(){
+      error = new IOException("Writing stopped");
+      try {
+         filled.put(END);
+         thread.join();
+      }
+      catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /*
+    * send: Method that passes the current buffer to the writing thread and takes a free buffer
+    */
+   private void send() throws IOException {
+      if (error != null)
+         throw error;
+      put(filled, current);
+      try {
+         current = empty.take();
+      }
+      catch (InterruptedException e){
+         throw new IOException("Interrupted while writing", e);
+      }
+   }
+
+   /*
+    * drain: Method run by the writing thread that writes each filled buffer and returns it to be filled again
+    * After an error the buffers are still returned, so the calculating thread never waits forever and sees the error instead
+    */
+   private void drain(){
+      try {
+         while (true){
+            Buffer buffer = filled.take();
+            if (buffer == END)
+               return;
+            if (buffer == FLUSH){
+               try {
+                  if (error == null)
+                     writer.flush();
+               }
+               catch (IOException e){
+                  error = e;
+               }
+               flushed.release();
+               continue;
+            }
+            if (error == null){
+               try {
+                  int start = 0;
+                  for (int i = 0; i < buffer.count; i++){
+                     writer.write(buffer.firstRow + i, buffer.formatter.buffer(), start, buffer.ends[i] - start);
+                     start = buffer.ends[i];
+                  }
+               }
+               catch (IOException e){
+                  error = e;
+               }
+            }
+            buffer.formatter.reset();
+            buffer.count = 0;
+            empty.put(buffer);
+         }
+      }
+      catch (InterruptedException e){
+         error = new IOException("Interrupted while writing", e);
+      }
+   }
+
+   // put: Method for adding a buffer to a queue, waiting if it is full
+   private static void put(BlockingQueue<Buffer> queue, Buffer buffer) throws IOException {
+      try {
+         queue.put(buffer);
+      }
+      catch (InterruptedException e){
+         throw new IOException("Interrupted while writing", e);
+      }
+   }
+}
@@ -0,0 +1,101 @@
+package generator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+// BlockFormatter class formats blocks of dataset rows on a pool of threads, while the calling thread writes the finished blocks in row order
+public class BlockFormatter {
+
+   // BLOCK_ROWS: The number of rows formatted together by a thread
+   private static final int BLOCK_ROWS = 2048;
+
+   // data: The dataset that rows are formatted from
+   private Dataset data;
+   // startDate: Date at which the final dataset starts at
+   private String startDate;
+   // period: The process period in seconds
+   private int period;
+   // digits: The number of significant digits written for each value (0 for full precision)
+   private int digits;
+   // threads: The number of formatting threads
+   private int threads;
+   // longFormat: Are the rows formatted as TIME, TAG, VALUE lines?
+   private boolean longFormat;
+
+   public BlockFormatter(Dataset data, String startDate, int period, int digits, int threads, boolean longFormat){
+      this.data = data;
+      this.startDate = startDate;
+      this.period = period;
+      this.digits = digits;
+      this.threads = threads;
+      this.longFormat = longFormat;
+   }
+
+   // Block class holds the text of a block of formatted rows
+   private static class Block {
+      // firstRow: The first row of the block
+      int firstRow;
+      // text: The formatted rows
+      byte[] text;
+      // ends: The end of each row in the text
+      int[] ends;
+   }
+
+   /*
+    * write: Method that formats the rows from a first to a last row and writes them to a given writer, stopping with a CancellationException once 'cancelled' is true
+    * Only a few blocks are queued for each thread, so the formatted text held in memory stays small while the writer catches up
+    */
+   public void write(int firstRow, int lastRow, RollingWriter writer, BooleanSupplier cancelled) throws IOException {
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      ThreadLocal<RowFormatter> formatters = ThreadLocal.withInitial(() -> new RowFormatter(data, startDate, period, digits, longFormat));
+      ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+      int next = firstRow;
+      try {
+         while (next <= lastRow || !pending.isEmpty()){
+            if (cancelled.getAsBoolean())
+               throw new CancellationException("Generation cancelled");
+            while (next <= lastRow && pending.size() < threads * 2){
+               int from = next;
+               int to = Math.min(next + BLOCK_ROWS - 1, lastRow);
+               pending.add(pool.submit(() -> format(formatters.get(), from, to)));
+               next = to + 1;
+            }
+            Block block = pending.poll().get();
+            int start = 0;
+            for (int i = 0; i < block.ends.length; i++){
+               writer.write(block.firstRow + i, block.text, start, block.ends[i] - start);
+               start = block.ends[i];
+            }
+         }
+      }
+      catch (InterruptedException | ExecutionException e){
+         throw new IOException("Formatting failed", e);
+      }
+      finally {
+         pool.shutdownNow();
+      }
+   }
+
+   /*
+    * format: Method that formats the rows from a first to a last row into a block
+    */
+   private Block format(RowFormatter formatter, int from, int to){
+      Block block = new Block();
+      block.firstRow = from;
+      block.ends = new int[to - from + 1];
+      formatter.reset();
+      for (int row = from; row <= to; row++){
+         formatter.appendRow(row);
+         block.ends[row - from] = formatter.length();
+      }
+      block.text = Arrays.copyOf(formatter.buffer(), formatter.length());
+      return block;
+   }
+}
@@ -0,0 +1,242 @@
+package generator;
+
+import com.google.common.collect.Table;
+import com.google.common.collect.TreeBasedTable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Config class reads a configuration folder into the data tables used by the Generator, without the user interface
+public class Config {
+
+   // REQUIRED: The variables that the default formulas in 'Formulas.java' read or set, which must be present in the inputs or state
+   public static final String[] REQUIRED = new Formulas(Formulas.DEFAULT).columns().toArray(new String[0]);
+
+   // input: Data table for the input configurations
+   Table<Integer, Integer, String> input;
+   // output: Data table for the output configurations
+   Table<Integer, Integer, String> output;
+   // labOutputs: HashMap for the lab configurations
+   LinkedHashMap<String, Table<Integer, Integer, String>> labOutputs;
+   // state: Data table for the state configurations
+   Table<Integer, Integer, String> state;
+   // processVariables: HashMap for the process configurations
+   HashMap<String, Double> processVariables;
+   // startDate: Date at which the final dataset starts at
+   String startDate;
+   // name: The name of the configuration folder
+   String name;
+   // formulas: The state and QCS formulas, from 'formulas.txt' in the folder or else the default formulas
+   String formulas = Formulas.DEFAULT;
+   // columns: The names of the columns written to the output, along with the TIME column (null for every column)
+   List<String> columns;
+   // from, to: The first and last rows written, as row numbers or TIMEs (null for the start and end of the move schedule)
+   String from;
+   String to;
+   // phase: The phase of the move schedule written instead of from and to (null for none)
+   String phase;
+   // aggregate: The interval in seconds of the statistics written to a file of their own (0 for none)
+   int aggregate;
+   // stats: The statistics written for each interval (see Aggregator.STATS)
+   List<String> stats = Arrays.asList("mean", "min", "max", "last");
+   // aggregateOnly: Are only the statistics written, instead of the rows as well?
+   boolean aggregateOnly;
+   // parsed, schedule: The parsed formulas and the move schedule shared by the generators created after share() (null for each generator to work them out)
+   Formulas parsed;
+   MoveSchedule schedule;
+   // SCHEDULE_SETTINGS: The process settings that change the move schedule
+   private static final String[] SCHEDULE_SETTINGS = {"Process", "QCS", "Lab", "Pulpeye", "Settle", "Uncoupled", "Trim", "Draw", "Coupled"};
+
+   /*
+    * The folder is searched for in 'config' first, the same as the Load Configurations page, and then as a path
+    */
+   public Config(String folder) throws IOException {
+      File dir = new File("config/" + folder);
+      if (!dir.isDirectory())
+         dir = new File(folder);
+      if (!dir.isDirectory())
+         throw new IOException("Folder " + folder + " not found");
+      name = dir.getName();
+
+      input = read(dir, "input");
+      state = read(dir, "state");
+      output = read(dir, "output");
+      Table<Integer, Integer, String> process = read(dir, "process");
+      Table<Integer, Integer, String> lab = read(dir, "labOutputs");
+      File formulaFile = new File(dir, "formulas.txt");
+      if (formulaFile.exists())
+         formulas = new String(Files.readAllBytes(formulaFile.toPath()), StandardCharsets.UTF_8);
+
+      // Validation rows can have blank values at the end of a line
+      for (int r = 13; r <= input.rowKeySet().size(); r++){
+         for (int i = 2; i <= input.columnKeySet().size(); i++){
+            if (input.get(r, i) == null)
+               input.put(r, i, "");
+         }
+      }
+
+      startDate = process.get(1, 2);
+      processVariables = new HashMap<>();
+      processVariables.put("Process", Double.parseDouble(process.get(2, 2)));
+      processVariables.put("QCS", Double.parseDouble(process.get(3, 2)));
+      processVariables.put("Lab", Double.parseDouble(process.get(4, 2)));
+      processVariables.put("Pulpeye", Double.parseDouble(process.get(5, 2)));
+      processVariables.put("Settle", Double.parseDouble(process.get(6, 2)));
+      processVariables.put("Uncoupled", Double.parseDouble(process.get(7, 2)));
+      processVariables.put("Trim", Double.parseDouble(process.get(8, 2)));
+      processVariables.put("Draw", Double.parseDouble(process.get(9, 2)));
+      processVariables.put("Coupled", (double) Math.max(input.rowKeySet().size() - 12, 0));
+      // The output settings were added later, so older configurations without them use the defaults
+      processVariables.put("Float", process.get(10, 2) != null ? Double.parseDouble(process.get(10, 2)) : 0);
+      processVariables.put("Digits", process.get(11, 2) != null ? Double.parseDouble(process.get(11, 2)) : 0);
+      double digits = processVariables.get("Digits");
+      if (digits < 0 || digits > RowFormatter.MAX_DIGITS || digits != Math.floor(digits))
+         throw new IllegalArgumentException("The output digits of " + folder + " must be a whole number from 0 to " + RowFormatter.MAX_DIGITS);
+
+      // Lab output tables are prepared the same way as the Lab Outputs page
+      labOutputs = new LinkedHashMap<>();
+      for (int i = 2; i <= output.columnKeySet().size(); i++){
+         Table<Integer, Integer, String> t = TreeBasedTable.create();
+         t.put(1, 2, "Weight");
+         t.put(1, 3, "Asymptote");
+         t.put(1, 4, "Order");
+         t.put(1, 5, "Slope");
+         t.put(1, 6, "Gainmodel");
+         t.put(1, 7, "Direction");
+         t.put(1, 8, "Gainshape");
+         labOutputs.put(output.get(1, i), t);
+      }
+      // 'labOutputs.csv' holds a block for each output: its name, one row for each variable, then a blank row
+      String key = null;
+      int lastRow = lab.rowKeySet().isEmpty() ? 0 : Collections.max(lab.rowKeySet());
+      for (int r = 1; r <= lastRow; r++){
+         String name = lab.get(r, 1);
+         if (name == null || name.isEmpty() || name.equals("\"\"")){
+            key = null;
+            continue;
+         }
+         if (key == null){
+            key = name;
+            continue;
+         }
+         Table<Integer, Integer, String> t = labOutputs.get(key);
+         if (t == null)
+            throw new IOException("Error in labOutputs.csv: " + key + " is not an output");
+         int row = t.rowKeySet().size() + 1;
+         for (int c = 1; c <= 8; c++){
+            String value = lab.get(r, c);
+            t.put(row, c, value == null ? "" : value.trim());
+         }
+      }
+   }
+
+   /*
+    * missing: Method that returns the variables of the formulas that are not in the inputs or state
+    */
+   public List<String> missing(){
+      List<String> list = new ArrayList<>();
+      for (String var : new Formulas(formulas).columns()){
+         if (!input.row(1).containsValue(var) && !state.row(1).containsValue(var))
+            list.add(var);
+      }
+      return list;
+   }
+
+   /*
+    * sameSchedule: Method that checks if another configuration only differs from this one in its noise and sine amplitudes
+    * Those rows are the input Noise and Sin Amplitude rows, the state Noise row and the output Noise row
+    */
+   public boolean sameSchedule(Config other){
+      if (!startDate.equals(other.startDate) || !labOutputs.equals(other.labOutputs) || !formulas.equals(other.formulas))
+         return false;
+      for (String setting : SCHEDULE_SETTINGS){
+         if (!processVariables.get(setting).equals(other.processVariables.get(setting)))
+            return false;
+      }
+      return sameRows(input, other.input, 6, 11) && sameRows(state, other.state, 6) && sameRows(output, other.output, 3);
+   }
+
+   // sameRows: Method for checking if two tables are the same apart from the given rows
+   private static boolean sameRows(Table<Integer, Integer, String> table, Table<Integer, Integer, String> other, Integer... skip){
+      if (!table.rowKeySet().equals(other.rowKeySet()))
+         return false;
+      List<Integer> skipped = Arrays.asList(skip);
+      for (Integer row : table.rowKeySet()){
+         if (!skipped.contains(row) && !table.row(row).equals(other.row(row)))
+            return false;
+      }
+      return true;
+   }
+
+   /*
+    * share: Method that parses the formulas and works out the move schedule once, for the generators created after it to share
+    * The datasets of the same configurations, and of scenarios with the same move schedule (see sameSchedule), then only compile the formulas
+    * and calculate their own values. The values depend on the noise from the start, since the inputs are filtered from their noisy values
+    */
+   public void share(){
+      parsed = new Formulas(formulas);
+      // Nothing is generated by this generator, so its few empty rows are kept on the heap whatever the storage
+      HashMap<String, Double> settings = new HashMap<>(processVariables);
+      settings.put("Storage", (double) DatasetStore.HEAP);
+      schedule = new Generator(input, output, labOutputs, state, settings, startDate, parsed, null).schedule();
+   }
+
+   /*
+    * generator: Method that creates a Generator for the configurations
+    */
+   public Generator generator(){
+      return limit(new Generator(input, output, labOutputs, state, processVariables, startDate, parsed != null ? parsed : new Formulas(formulas), schedule));
+   }
+
+   /*
+    * generator: Method that creates a Generator for the configurations with a given seed, without changing the settings
+    */
+   public Generator generator(long seed){
+      HashMap<String, Double> settings = new HashMap<>(processVariables);
+      settings.put("Seed", (double) seed);
+      return limit(new Generator(input, output, labOutputs, state, settings, startDate, parsed != null ? parsed : new Formulas(formulas), schedule));
+   }
+
+   // limit: Method for limiting a given Generator to the columns and rows that are written, and setting the statistics written, if they are set
+   private Generator limit(Generator gen){
+      if (columns != null)
+         gen.setColumns(columns);
+      if (phase != null)
+         gen.setPhase(phase);
+      else if (from != null || to != null)
+         gen.setWindow(from, to);
+      if (aggregate > 0)
+         gen.setAggregates(aggregate, stats, aggregateOnly);
+      return gen;
+   }
+
+   // read: Method for reading a CSV file into a data table given the folder and file name
+   private static Table<Integer, Integer, String> read(File dir, String name) throws IOException {
+      Table<Integer, Integer, String> table = TreeBasedTable.create();
+      File file = new File(dir, name + ".csv");
+      if (!file.exists())
+         throw new IOException("Error, ensure a file named " + name + ".csv exists in the folder");
+      BufferedReader br = new BufferedReader(new FileReader(file));
+      String line;
+      int r = 0;
+      while ((line = br.readLine()) != null) {
+         r++;
+         int c = 0;
+         for (String value : line.split(",")) {
+            c++;
+            table.put(r, c, value.trim());
+         }
+      }
+      br.close();
+      return table;
+   }
+}
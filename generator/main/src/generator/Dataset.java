@@ -0,0 +1,256 @@
+package generator;
+
+import java.util.Arrays;
+
+// Dataset class stores the generated values as numeric columns instead of a table of strings
+public class Dataset {
+
+   // FIRST_ROW: The row number of the first value row (rows 1 and 2 hold the names and descriptions)
+   public static final int FIRST_ROW = 3;
+
+   // names: The column names, the first column is the TIME column
+   private String[] names;
+   // descriptions: The column descriptions
+   private String[] descriptions;
+   // store: The values of the columns
+   private DatasetStore store;
+   // storage: The kind of store the values are kept in (DatasetStore.HEAP, OFF_HEAP or MAPPED)
+   private int storage;
+   // single: Are the values stored with float32 precision?
+   private boolean single;
+   // capacity: The number of value rows that are currently allocated for each column
+   private int capacity;
+   // period: The number of rows between the samples of each column (1 for a value on every row)
+   private int[] period;
+   // compact: Is only every sample row of a column stored, instead of every row?
+   private boolean[] compact;
+   // window: The number of most recent rows kept when the dataset is a ring buffer (0 keeps every row)
+   private int window;
+   // written: Is a column written to the output? Columns only calculated for other columns are not
+   private boolean[] written;
+
+   public Dataset(int columns, boolean single){
+      this(columns, single, 0);
+   }
+
+   /*
+    * A dataset with a window only keeps that many of the most recent rows, older rows are overwritten as new rows are set
+    */
+   public Dataset(int columns, boolean single, int window){
+      this(columns, single, window, DatasetStore.HEAP);
+   }
+
+   /*
+    * The values are kept in a given kind of store (DatasetStore.HEAP, OFF_HEAP or MAPPED) until the dataset is freed
+    */
+   public Dataset(int columns, boolean single, int window, int storage){
+      this.single = single;
+      this.window = window;
+      this.storage = storage;
+      names = new String[columns + 1];
+      descriptions = new String[columns + 1];
+      period = new int[columns + 1];
+      compact = new boolean[columns + 1];
+      written = new boolean[columns + 1];
+      Arrays.fill(period, 1);
+      Arrays.fill(written, true);
+      capacity = window > 0 ? window : 1024;
+      // The TIME column (column 1) is calculated when written, so it does not need any storage
+      store = DatasetStore.create(storage, columns, single);
+      for (int col = 2; col <= columns; col++)
+         store.allocate(col, capacity);
+   }
+
+   /*
+    * columns: Method that returns the number of columns, including the TIME column
+    */
+   public int columns(){
+      return names.length - 1;
+   }
+
+   /*
+    * isSingle: Method that checks if the values are stored with float32 precision
+    */
+   public boolean isSingle(){
+      return single;
+   }
+
+   /*
+    * storage: Method that returns the kind of store the values are kept in
+    */
+   public int storage(){
+      return storage;
+   }
+
+   /*
+    * setHeading: Method that sets the name and description of a given column
+    */
+   public void setHeading(int col, String name, String description){
+      names[col] = name;
+      descriptions[col] = description;
+   }
+
+   /*
+    * name: Method that returns the name of a given column
+    */
+   public String name(int col){
+      return names[col];
+   }
+
+   /*
+    * description: Method that returns the description of a given column
+    */
+   public String description(int col){
+      return descriptions[col];
+   }
+
+   /*
+    * setWritten: Method that sets if a given column is written to the output, the TIME column is always written
+    */
+   public void setWritten(int col, boolean write){
+      written[col] = write;
+   }
+
+   /*
+    * isWritten: Method that checks if a given column is written to the output
+    */
+   public boolean isWritten(int col){
+      return written[col];
+   }
+
+   /*
+    * setPeriod: Method that sets the number of rows between the samples of a given column
+    * Rows between the samples are still stored until the column is compacted, so calculations can read them
+    */
+   public void setPeriod(int col, int rows){
+      period[col] = Math.max(rows, 1);
+   }
+
+   /*
+    * period: Method that returns the number of rows between the samples of a given column
+    */
+   public int period(int col){
+      return period[col];
+   }
+
+   /*
+    * isSample: Method that checks if a given row holds a sample of a given column
+    */
+   public boolean isSample(int row, int col){
+      return (row - FIRST_ROW) % period[col] == 0;
+   }
+
+   /*
+    * isCompact: Method that checks if only the sample rows of a given column are stored
+    */
+   public boolean isCompact(int col){
+      return compact[col];
+   }
+
+   /*
+    * compact: Method that changes a given column to only store its sample rows, any values between the samples are discarded
+    */
+   public void compact(int col){
+      if (compact[col] || period[col] == 1)
+         return;
+      int length = capacity / period[col] + 1;
+      double[] values = new double[length];
+      for (int i = 0; i < length; i++){
+         int row = i * period[col];
+         values[i] = row < capacity ? store.get(col, row) : Double.NaN;
+      }
+      store.allocate(col, length);
+      for (int i = 0; i < length; i++)
+         store.set(col, i, values[i]);
+      compact[col] = true;
+   }
+
+   /*
+    * searchCol: Method returns the column number of a given name, or 0 if the name is not found
+    */
+   public int searchCol(String name){
+      for (int i = 2; i < names.length; i++){
+         if (names[i].equals(name))
+            return i;
+      }
+      return 0;
+   }
+
+   /*
+    * index: Method that returns the storage index of a given row and column, or -1 if the row is not stored
+    */
+   private int index(int row, int col){
+      int i = row - FIRST_ROW;
+      if (i < 0)
+         return -1;
+      if (compact[col]){
+         if (i % period[col] != 0)
+            return -1;
+         i = i / period[col];
+      }
+      if (window > 0)
+         return i % (compact[col] ? capacity / period[col] + 1 : capacity);
+      return i;
+   }
+
+   /*
+    * get: Method that returns the value of a given row and column, an empty value is returned as NaN
+    * With a window, only the most recent rows can be read
+    */
+   public double get(int row, int col){
+      int i = index(row, col);
+      if (i < 0 || (window == 0 && row - FIRST_ROW >= capacity))
+         return Double.NaN;
+      return store.get(col, i);
+   }
+
+   /*
+    * set: Method that sets the value of a given row and column
+    * Compact columns only keep their sample rows, so values for the rows between the samples are ignored
+    */
+   public void set(int row, int col, double value){
+      int i = index(row, col);
+      if (i < 0)
+         return;
+      if (window == 0 && row - FIRST_ROW >= capacity)
+         grow(row - FIRST_ROW + 1);
+      store.set(col, i, value);
+   }
+
+   /*
+    * copy: Method that copies the values of a given column into an array, one value for each row from a given first row
+    * Rows that are not stored are copied as NaN, full columns on every row are copied from the store in one go
+    */
+   public void copy(int col, int firstRow, double[] values){
+      int i = firstRow - FIRST_ROW;
+      if (window == 0 && !compact[col] && i >= 0){
+         int stored = Math.max(Math.min(values.length, capacity - i), 0);
+         store.copy(col, i, values, 0, stored);
+         Arrays.fill(values, stored, values.length, Double.NaN);
+      }
+      else{
+         for (int row = 0; row < values.length; row++)
+            values[row] = get(firstRow + row, col);
+      }
+   }
+
+   /*
+    * grow: Method that increases the allocated rows of every column so that it can hold a given number of rows
+    */
+   private void grow(int size){
+      while (capacity < size)
+         capacity = capacity * 2;
+      for (int col = 2; col < names.length; col++){
+         int length = compact[col] ? capacity / period[col] + 1 : capacity;
+         store.resize(col, length);
+      }
+   }
+
+   /*
+    * free: Method that releases the storage of every column, the dataset cannot be used after this
+    * Memory outside of the heap is returned straight away, instead of when the garbage collector finds the dataset is no longer used
+    */
+   public void free(){
+      store.free();
+   }
+}
@@ -0,0 +1,78 @@
+package generator;
+
+// DatasetStore interface holds the values of the dataset columns, so the storage can be chosen without changing the calculations
+public interface DatasetStore {
+
+   // HEAP: Values are stored in arrays on the Java heap
+   int HEAP = 0;
+   // OFF_HEAP: Values are stored in direct buffers outside of the Java heap
+   int OFF_HEAP = 1;
+   // MAPPED: Values are stored in memory mapped files, so the operating system can page them out to disk
+   int MAPPED = 2;
+
+   /*
+    * allocate: Method that creates a given column with a given number of empty values, replacing any values it held
+    */
+   void allocate(int col, int length);
+
+   /*
+    * resize: Method that changes the number of values of a given column, keeping the values that still fit and leaving new values empty
+    */
+   void resize(int col, int length);
+
+   /*
+    * length: Method that returns the number of values of a given column
+    */
+   int length(int col);
+
+   /*
+    * get: Method that returns the value at a given index of a given column
+    */
+   double get(int col, int i);
+
+   /*
+    * set: Method that sets the value at a given index of a given column
+    */
+   void set(int col, int i, double value);
+
+   /*
+    * copy: Method that copies a given number of values of a given column, starting at a given index, into an array at a given offset
+    */
+   default void copy(int col, int from, double[] values, int offset, int length){
+      for (int i = 0; i < length; i++)
+         values[offset + i] = get(col, from + i);
+   }
+
+   /*
+    * free: Method that releases the storage of every column, the store cannot be used after this
+    */
+   void free();
+
+   /*
+    * create: Method that creates a store of a given kind (HEAP, OFF_HEAP or MAPPED) for a number of columns, with float32 or double values
+    */
+   static DatasetStore create(int storage, int columns, boolean single){
+      switch (storage){
+         case OFF_HEAP:
+            return new OffHeapStore(columns, single);
+         case MAPPED:
+            return new MappedStore(columns, single);
+         default:
+            return new HeapStore(columns, single);
+      }
+   }
+
+   /*
+    * name: Method that returns the name of a given kind of store, as used on the command line
+    */
+   static String name(int storage){
+      switch (storage){
+         case OFF_HEAP:
+            return "off-heap";
+         case MAPPED:
+            return "mapped";
+         default:
+            return "heap";
+      }
+   }
+}
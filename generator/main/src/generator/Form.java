@@ -19,6 +19,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import javax.swing.*;
@@ -32,6 +33,8 @@ public class Form extends javax.swing.JFrame {
    private javax.swing.JTextField dateField;
    private javax.swing.JLabel dateLabel;
    private javax.swing.JTextField deadtimeReelField;
+   private javax.swing.JTextField digitsField;
+   private javax.swing.JLabel digitsLabel;
    private javax.swing.JLabel deadtimeReelLabel;
    private javax.swing.JComboBox<String> descBox;
    private javax.swing.JButton descButton;
@@ -45,10 +48,12 @@ public class Form extends javax.swing.JFrame {
    private javax.swing.JLabel downloadLabel;
    private javax.swing.JTextField drawField;
    private javax.swing.JLabel drawLabel;
+   private javax.swing.JCheckBox floatBox;
    private javax.swing.JLabel formatLabel;
    private javax.swing.JLabel gainDirectionLabel;
    private javax.swing.JLabel gainModelLabel;
    private javax.swing.JLabel gainShapeLabel;
+   private javax.swing.JButton cancelButton;
    private javax.swing.JButton genButton;
    private javax.swing.JButton genDataButton;
    private javax.swing.JLabel genLabel;
@@ -281,6 +286,8 @@ public class Form extends javax.swing.JFrame {
    private boolean statePrinted;
    // generating: Is the dataset being generated?
    private boolean generating;
+   // generator: The generator of the dataset being generated, so it can be cancelled
+   private volatile Generator generator;
    // loaded: Has the data been loaded?
    private boolean loaded;
 
@@ -428,6 +435,9 @@ public class Form extends javax.swing.JFrame {
       processMessageLabel = new javax.swing.JLabel();
       settleField = new javax.swing.JTextField();
       settleLabel = new javax.swing.JLabel();
+      digitsField = new javax.swing.JTextField();
+      digitsLabel = new javax.swing.JLabel();
+      floatBox = new javax.swing.JCheckBox();
       processDescConfig = new javax.swing.JPanel();
       processDescLabel = new javax.swing.JLabel();
       descNameLabel = new javax.swing.JLabel();
@@ -550,6 +560,7 @@ public class Form extends javax.swing.JFrame {
       generate = new javax.swing.JPanel();
       infoLabel = new javax.swing.JLabel();
       genButton = new javax.swing.JButton();
+      cancelButton = new javax.swing.JButton();
       progressLabel = new javax.swing.JLabel();
       loadBar = new javax.swing.JProgressBar();
       generateTitleLabel = new javax.swing.JLabel();
@@ -929,6 +940,19 @@ public class Form extends javax.swing.JFrame {
       settleLabel.setForeground(new java.awt.Color(0, 0, 0));
       settleLabel.setText("Added Settle (sec)");
 
+      digitsField.setBackground(new java.awt.Color(255, 255, 255));
+      digitsField.setForeground(new java.awt.Color(0, 0, 0));
+
+      digitsLabel.setBackground(new java.awt.Color(0, 0, 0));
+      digitsLabel.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
+      digitsLabel.setForeground(new java.awt.Color(0, 0, 0));
+      digitsLabel.setText("Output Digits (0 = full)");
+
+      floatBox.setBackground(new java.awt.Color(255, 255, 255));
+      floatBox.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
+      floatBox.setForeground(new java.awt.Color(0, 0, 0));
+      floatBox.setText("Float32 Storage");
+
       javax.swing.GroupLayout processConfigLayout = new javax.swing.GroupLayout(processConfig);
       processConfig.setLayout(processConfigLayout);
       processConfigLayout.setHorizontalGroup(
@@ -963,10 +987,15 @@ public class Form extends javax.swing.JFrame {
                                     .addGap(358, 358, 358)
                                     .addComponent(processTitleLabel))
                               .addGroup(processConfigLayout.createSequentialGroup()
-                                    .addGap(407, 407, 407)
+                                    .addGap(278, 278, 278)
                                     .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                           .addComponent(settleField, javax.swing.GroupLayout.PREFERRED_SIZE, 91, javax.swing.GroupLayout.PREFERRED_SIZE)
-                                          .addComponent(settleLabel)))
+                                          .addComponent(settleLabel)
+                                          .addComponent(floatBox))
+                                    .addGap(35, 35, 35)
+                                    .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                                          .addComponent(digitsField, javax.swing.GroupLayout.PREFERRED_SIZE, 91, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                          .addComponent(digitsLabel)))
                               .addGroup(processConfigLayout.createSequentialGroup()
                                     .addGap(399, 399, 399)
                                     .addComponent(submitProcessButton, javax.swing.GroupLayout.PREFERRED_SIZE, 107, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -1012,10 +1041,16 @@ public class Form extends javax.swing.JFrame {
                         .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                               .addComponent(drawField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                               .addComponent(labField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                              .addComponent(settleLabel)
+                              .addComponent(digitsLabel))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(settleLabel)
-                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(settleField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                              .addComponent(settleField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                              .addComponent(digitsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(floatBox)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 37, Short.MAX_VALUE)
                         .addGroup(processConfigLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                               .addComponent(submitProcessButton, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -2326,6 +2361,17 @@ public class Form extends javax.swing.JFrame {
          }
       });
 
+      cancelButton.setBackground(new java.awt.Color(51, 153, 255));
+      cancelButton.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
+      cancelButton.setForeground(new java.awt.Color(255, 255, 255));
+      cancelButton.setText("Cancel");
+      cancelButton.setMargin(new java.awt.Insets(2, 5, 2, 5));
+      cancelButton.addActionListener(new java.awt.event.ActionListener() {
+         public void actionPerformed(java.awt.event.ActionEvent evt) {
+            cancelButtonActionPerformed();
+         }
+      });
+
       progressLabel.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
       progressLabel.setForeground(new java.awt.Color(0, 0, 0));
       progressLabel.setText("Progress");
@@ -2410,7 +2456,9 @@ public class Form extends javax.swing.JFrame {
                                                       .addComponent(timeLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 622, javax.swing.GroupLayout.PREFERRED_SIZE)))
                                           .addGroup(generateLayout.createSequentialGroup()
                                                 .addGap(406, 406, 406)
-                                                .addComponent(genButton, javax.swing.GroupLayout.PREFERRED_SIZE, 140, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                                .addGroup(generateLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                                                      .addComponent(genButton, javax.swing.GroupLayout.PREFERRED_SIZE, 140, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                      .addComponent(cancelButton, javax.swing.GroupLayout.PREFERRED_SIZE, 140, javax.swing.GroupLayout.PREFERRED_SIZE)))
                                           .addGroup(generateLayout.createSequentialGroup()
                                                 .addGap(392, 392, 392)
                                                 .addComponent(generateTitleLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 211, javax.swing.GroupLayout.PREFERRED_SIZE)))
@@ -2436,7 +2484,9 @@ public class Form extends javax.swing.JFrame {
                                     .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                                     .addComponent(downloadFolderButton)))
                         .addGap(28, 28, 28)
-                        .addComponent(genButton, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGroup(generateLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                              .addComponent(genButton, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE)
+                              .addComponent(cancelButton, javax.swing.GroupLayout.PREFERRED_SIZE, 39, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addGap(27, 27, 27)
                         .addComponent(loadBar, javax.swing.GroupLayout.PREFERRED_SIZE, 25, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addGap(31, 31, 31)
@@ -2615,6 +2665,15 @@ public class Form extends javax.swing.JFrame {
          ucField.setText(String.valueOf((int) Double.parseDouble(tempProcess.get(7, 2))));
          trimField.setText(tempProcess.get(8, 2));
          drawField.setText(tempProcess.get(9, 2));
+         // The output settings were added later, so older configurations without them use the defaults
+         if (tempProcess.get(10, 2) != null)
+            floatBox.setSelected(Double.parseDouble(tempProcess.get(10, 2)) == 1);
+         else
+            floatBox.setSelected(false);
+         if (tempProcess.get(11, 2) != null)
+            digitsField.setText(String.valueOf((int) Double.parseDouble(tempProcess.get(11, 2))));
+         else
+            digitsField.setText("0");
 
          // Data is placed into UI tables and dropdown boxes
          for (int i = 2; i <= tempDesc.columnKeySet().size(); i++){
@@ -2794,6 +2853,7 @@ public class Form extends javax.swing.JFrame {
       String trim = trimField.getText().trim();
       String uc = ucField.getText().trim();
       String settle = settleField.getText().trim();
+      String digits = digitsField.getText().trim();
       processMessageLabel.setVisible(true);
 
       // Applies validation checks
@@ -2805,6 +2865,9 @@ public class Form extends javax.swing.JFrame {
             || Ints.tryParse(qcs) == null || Ints.tryParse(uc) == null || Ints.tryParse(settle) == null
             || Doubles.tryParse(trim) == null || Doubles.tryParse(draw) == null)
          processMessageLabel.setText("Values fields must be a number, only trim and draw can be a decimal");
+      else if (!digits.isEmpty() && (Ints.tryParse(digits) == null || Integer.parseInt(digits) < 0 || Integer.parseInt(digits) > 17)){
+         processMessageLabel.setText("Output digits must be a whole number from 0 to 17");
+      }
       else if (Integer.parseInt(qcs) % Integer.parseInt(processPeriod) != 0){
          processMessageLabel.setText("QCS period is not a multiple of the Process period");
       }
@@ -2833,6 +2896,8 @@ public class Form extends javax.swing.JFrame {
          processVariables.put("Draw", Double.parseDouble(draw));
          processVariables.put("Settle", Double.parseDouble(settle));
          processVariables.put("Coupled", (double) 0);
+         processVariables.put("Float", floatBox.isSelected() ? 1.0 : 0.0);
+         processVariables.put("Digits", digits.isEmpty() ? 0.0 : Double.parseDouble(digits));
          processMessageLabel.setText("Values submitted");
          process = processVariables.get("Process");
       }
@@ -3616,12 +3681,30 @@ public class Form extends javax.swing.JFrame {
             downloadField.setVisible(false);
             downloadLabel.setVisible(false);
             downloadFolderButton.setVisible(false);
+            cancelButton.setVisible(false);
+            showPlan();
          }
       }
    }
 
    // The following set of methods are for the Generate Data page
 
+   /*
+    * showPlan: Method that shows the predicted size of the dataset before it is generated
+    */
+   private void showPlan(){
+      try {
+         Generator gen = new Generator(input, output, labOutputs, state, processVariables, startDate);
+         listTextArea.setText(gen.plan().toString());
+         listTextArea.setCaretPosition(0);
+         listTextArea.setVisible(true);
+      }
+      catch (Exception e){
+         // The plan is only shown when the configurations are complete, the Generate button lists what is missing
+         listTextArea.setVisible(false);
+      }
+   }
+
    /*
     * genButtonActionPerformed: Method when clicking on the Generate button
     */
@@ -3636,12 +3719,8 @@ public class Form extends javax.swing.JFrame {
       for (int i = 2; i <= state.columnKeySet().size(); i ++){
          list.add(state.get(1, i));
       }
-      // The array below contains hard-coded variables in 'Generator.java' that must be present
-      String[] variables = {"MV_SWFreeness", "MV_HWFreeness", "MV_OCCFreeness", "MV_HeadboxPressure", "MV_SliceOpening",
-            "MV_MachineSpeed", "MV_SWSpecificEnergy", "MV_HWSpecificEnergy", "MV_OCCSpecificEnergy", "MV_SWPct", "MV_HWPct", "MV_OCCPct", "PulpEye_BlendFreeness", "PulpEye_BlendCrill",
-            "QCS_BoneDryWeight", "QCS_BasisWeight", "QCS_Moisture", "QCS_Caliper", "MV_WireSpeed", "MV_SWFlow",
-            "MV_HWFlow", "MV_OCCFlow", "MV_ThinStockConsistency", "MV_ThinStockFlow", "MV_PressLoad", "MV_SteamPressure",
-            "MV_JettoWire", "PulpEye_SWCrill", "PulpEye_HWCrill", "PulpEye_OCCCrill"};
+      // The array below contains the variables of the default formulas in 'Formulas.java' that must be present
+      String[] variables = Config.REQUIRED;
       listTextArea.setText("");
       listTextArea.setVisible(true);
       /*
@@ -3657,6 +3736,10 @@ public class Form extends javax.swing.JFrame {
          // Generation can start
          listTextArea.setVisible(false);
          genButton.setVisible(false);
+         // The Cancel button takes the place of the Generate button while generating
+         generator = null;
+         cancelButton.setEnabled(true);
+         cancelButton.setVisible(true);
          infoLabel.setText("Generating data");
          progressLabel.setVisible(true);
          loadBar.setValue(0);
@@ -3685,19 +3768,20 @@ public class Form extends javax.swing.JFrame {
             protected Boolean doInBackground(){
                try{
                   Generator gen = new Generator(input, output, labOutputs, state, processVariables, startDate);
+                  generator = gen;
                   publish("Calculating input variables...");
                   gen.createInputs();
-                  publish("Calculating state variables...");
-                  gen.calcState();
-                  publish("Calculating QCS variables...");
-                  gen.calcQCS();
-                  publish("Calculating output lab variables...");
-                  gen.calcLab();
+                  publish("Calculating state, QCS and output lab variables...");
+                  gen.calcVariables();
                   publish("Creating final dataset...");
                   gen.createDataset();
                   // Returns true so the get() method can be checked to see if it was successful
                  return true;
                }
+               catch(CancellationException e){
+                  // The generator has already removed any files it started
+                  return false;
+               }
                catch(Exception e){
                   progressLabel.setText("Error:" + e);
                   dialog("Error: " + e, "Generation Error");
@@ -3716,7 +3800,15 @@ public class Form extends javax.swing.JFrame {
             // done: Method that performs actions once doInBackground() completes
             @Override
             protected void done() {
+               cancelButton.setVisible(false);
                try {
+                  if (generator != null && generator.isCancelled()){
+                     progressLabel.setText("Generation cancelled");
+                     loadBar.setVisible(false);
+                     genButton.setVisible(true);
+                     generating = false;
+                     return;
+                  }
                   // Only runs if successful
                   if (get()){
                      /*
@@ -3752,6 +3844,17 @@ public class Form extends javax.swing.JFrame {
    }
 
 
+   /*
+    * cancelButtonActionPerformed: Method when clicking on the Cancel button, the generation stops at its next check
+    */
+   private void cancelButtonActionPerformed() {
+      if (generator != null){
+         generator.cancel();
+         cancelButton.setEnabled(false);
+         progressLabel.setText("Cancelling...");
+      }
+   }
+
    /*
     * downloadButtonActionPerformed: Method when clicking on the Download Configurations button
     */
@@ -3831,6 +3934,8 @@ public class Form extends javax.swing.JFrame {
          process.put(7, 1, "Uncoupled Moves");
          process.put(8, 1, "Trim (ft)");
          process.put(9, 1, "Draw");
+         process.put(10, 1, "Float32 Storage");
+         process.put(11, 1, "Output Digits");
          process.put(1, 2, startDate);
          process.put(2, 2, processVariables.get("Process").toString());
          process.put(3, 2, processVariables.get("QCS").toString());
@@ -3840,6 +3945,8 @@ public class Form extends javax.swing.JFrame {
          process.put(7, 2, processVariables.get("Uncoupled").toString());
          process.put(8, 2, processVariables.get("Trim").toString());
          process.put(9, 2, processVariables.get("Draw").toString());
+         process.put(10, 2, processVariables.get("Float").toString());
+         process.put(11, 2, processVariables.get("Digits").toString());
          write(process, "process");
 
          Table<Integer, Integer, String> lab = TreeBasedTable.create();
@@ -0,0 +1,444 @@
+package generator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Formula class parses an arithmetic expression and compiles it into a method handle that calculates its value for a given row
+// Expressions have numbers, names, + - * / ^, comparisons inside if(test, then, else), and the functions exp, log, sqrt, abs, pow, min, max, lag and noise
+public class Formula {
+
+   // ROW: The type of a compiled expression, the value for a given row
+   static final MethodType ROW = MethodType.methodType(double.class, int.class);
+   // TEST: The type of a compiled comparison
+   private static final MethodType TEST = MethodType.methodType(boolean.class, int.class);
+   // FUNCTIONS: The functions of one or two values, from Math or this class
+   private static final String[] FUNCTIONS = {"exp", "log", "sqrt", "abs", "pow", "min", "max"};
+
+   // Node class is a part of a parsed expression
+   static class Node {
+      // op: The operator, function or comparison, "n" for a number and "v" for a name
+      String op;
+      // value: The value of a number
+      double value;
+      // name: The name of a variable, or the column of an attribute
+      String name;
+      // attribute: The configuration row of a column that is read, for example Max in 'QCS_Caliper.Max' (null for the value of the column)
+      String attribute;
+      // args: The values that the operator or function is applied to
+      Node[] args;
+
+      Node(String op, Node... args){
+         this.op = op;
+         this.args = args;
+      }
+   }
+
+   // Binding interface gives the meaning of the names in an expression when it is compiled
+   interface Binding {
+      /*
+       * variable: Method that returns the value of a given name for a given row, as a method handle of type ROW
+       */
+      MethodHandle variable(String name);
+
+      /*
+       * attribute: Method that returns the value of a given configuration row of a given column
+       */
+      double attribute(String column, String row);
+
+      /*
+       * lag: Method that returns the dead time and lag filtered value of a given column for a given row, as a method handle of type ROW
+       */
+      MethodHandle lag(String column);
+
+      /*
+       * noise: Method that returns a method handle that takes a noise amplitude and returns a random noise value
+       */
+      MethodHandle noise();
+   }
+
+   // text: The expression text
+   private String text;
+   // at: The position of the parser in the text
+   private int at;
+   // root: The parsed expression
+   Node root;
+
+   /*
+    * The expression is parsed straight away, an IllegalArgumentException gives the position of any error
+    */
+   public Formula(String text){
+      this.text = text;
+      root = sum();
+      skip();
+      if (at < text.length())
+         throw error("Unexpected '" + text.charAt(at) + "'");
+   }
+
+   /*
+    * names: Method that adds the names read by the expression to a given list, and the columns passed to lag() to another list
+    */
+   public void names(List<String> names, List<String> lags){
+      names(root, names, lags);
+   }
+
+   private static void names(Node node, List<String> names, List<String> lags){
+      if (node.op.equals("v") && node.attribute == null && !names.contains(node.name))
+         names.add(node.name);
+      if (node.op.equals("lag") && !lags.contains(node.args[0].name))
+         lags.add(node.args[0].name);
+      else {
+         for (Node arg : node.args)
+            names(arg, names, lags);
+      }
+   }
+
+   /*
+    * noises: Method that returns the number of random noise values the expression draws, -1 when it depends on an if()
+    */
+   public int noises(){
+      return noises(root);
+   }
+
+   private static int noises(Node node){
+      int count = node.op.equals("noise") ? 1 : 0;
+      for (int i = 0; i < node.args.length; i++){
+         int inner = noises(node.args[i]);
+         if (inner < 0 || (inner > 0 && node.op.equals("if") && i > 0))
+            return -1;
+         count += inner;
+      }
+      return count;
+   }
+
+   /*
+    * compile: Method that compiles the expression with a given binding into a method handle of type ROW
+    * Parts of the expression without names or noise are calculated once here
+    */
+   public MethodHandle compile(Binding binding){
+      return compile(root, binding);
+   }
+
+   private MethodHandle compile(Node node, Binding binding){
+      try {
+         switch (node.op){
+            case "n":
+               return constant(node.value);
+            case "v":
+               if (node.attribute != null)
+                  return constant(binding.attribute(node.name, node.attribute));
+               return binding.variable(node.name);
+            case "lag":
+               return binding.lag(node.args[0].name);
+            case "noise":
+               return MethodHandles.filterReturnValue(compile(node.args[0], binding), binding.noise());
+            case "if":
+               return MethodHandles.guardWithTest(test(node.args[0], binding), compile(node.args[1], binding), compile(node.args[2], binding));
+            case "~":
+               return fold(MethodHandles.filterReturnValue(compile(node.args[0], binding), operator("neg", 1)), node);
+            default:
+               MethodHandle function = operator(node.op, node.args.length);
+               if (node.args.length == 1)
+                  return fold(MethodHandles.filterReturnValue(compile(node.args[0], binding), function), node);
+               MethodHandle both = MethodHandles.filterArguments(function, 0, compile(node.args[0], binding), compile(node.args[1], binding));
+               return fold(MethodHandles.permuteArguments(both, ROW, 0, 0), node);
+         }
+      }
+      catch (ReflectiveOperationException e){
+         throw new IllegalStateException("Cannot compile " + node.op, e);
+      }
+   }
+
+   /*
+    * test: Method that compiles a comparison into a method handle that checks it for a given row
+    */
+   private MethodHandle test(Node node, Binding binding) throws ReflectiveOperationException {
+      MethodHandle compare = MethodHandles.lookup().findStatic(Formula.class, compareName(node.op),
+            MethodType.methodType(boolean.class, double.class, double.class));
+      MethodHandle both = MethodHandles.filterArguments(compare, 0, compile(node.args[0], binding), compile(node.args[1], binding));
+      return MethodHandles.permuteArguments(both, TEST, 0, 0);
+   }
+
+   // fold: Method for replacing a given compiled node with its value when it does not depend on the row or on noise
+   private static MethodHandle fold(MethodHandle handle, Node node){
+      if (!isConstant(node))
+         return handle;
+      try {
+         return constant((double) handle.invokeExact(0));
+      }
+      catch (Throwable e){
+         return handle;
+      }
+   }
+
+   // isConstant: Method for checking if a given node only has numbers and attributes
+   private static boolean isConstant(Node node){
+      if (node.op.equals("v"))
+         return node.attribute != null;
+      if (node.op.equals("lag") || node.op.equals("noise"))
+         return false;
+      for (Node arg : node.args){
+         if (!isConstant(arg))
+            return false;
+      }
+      return true;
+   }
+
+   // constant: Method for a method handle of type ROW that returns a given value
+   static MethodHandle constant(double value){
+      return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, int.class);
+   }
+
+   // operator: Method for finding the method of a given operator or function with a given number of values
+   private static MethodHandle operator(String op, int count) throws ReflectiveOperationException {
+      MethodType type = count == 1 ? MethodType.methodType(double.class, double.class) : MethodType.methodType(double.class, double.class, double.class);
+      switch (op){
+         case "+":
+            return MethodHandles.lookup().findStatic(Formula.class, "add", type);
+         case "-":
+            return MethodHandles.lookup().findStatic(Formula.class, "subtract", type);
+         case "*":
+            return MethodHandles.lookup().findStatic(Formula.class, "multiply", type);
+         case "/":
+            return MethodHandles.lookup().findStatic(Formula.class, "divide", type);
+         case "^":
+            return MethodHandles.lookup().findStatic(Math.class, "pow", type);
+         case "neg":
+            return MethodHandles.lookup().findStatic(Formula.class, "negate", type);
+         default:
+            return MethodHandles.lookup().findStatic(Math.class, op, type);
+      }
+   }
+
+   // compareName: Method for the name of the method of a given comparison
+   private static String compareName(String op){
+      switch (op){
+         case "<":
+            return "less";
+         case "<=":
+            return "lessOrEqual";
+         case ">":
+            return "greater";
+         case ">=":
+            return "greaterOrEqual";
+         case "==":
+            return "equal";
+         default:
+            return "notEqual";
+      }
+   }
+
+   private static double add(double a, double b){
+      return a + b;
+   }
+
+   private static double subtract(double a, double b){
+      return a - b;
+   }
+
+   private static double multiply(double a, double b){
+      return a * b;
+   }
+
+   private static double divide(double a, double b){
+      return a / b;
+   }
+
+   private static double negate(double a){
+      return -a;
+   }
+
+   private static boolean less(double a, double b){
+      return a < b;
+   }
+
+   private static boolean lessOrEqual(double a, double b){
+      return a <= b;
+   }
+
+   private static boolean greater(double a, double b){
+      return a > b;
+   }
+
+   private static boolean greaterOrEqual(double a, double b){
+      return a >= b;
+   }
+
+   private static boolean equal(double a, double b){
+      return a == b;
+   }
+
+   private static boolean notEqual(double a, double b){
+      return a != b;
+   }
+
+   /*
+    * sum: Method that parses terms added or subtracted from left to right
+    */
+   private Node sum(){
+      Node node = term();
+      while (peek("+") || peek("-")){
+         String op = text.substring(at, at + 1);
+         at++;
+         node = new Node(op, node, term());
+      }
+      return node;
+   }
+
+   /*
+    * term: Method that parses factors multiplied or divided from left to right
+    */
+   private Node term(){
+      Node node = unary();
+      while (peek("*") || peek("/")){
+         String op = text.substring(at, at + 1);
+         at++;
+         node = new Node(op, node, unary());
+      }
+      return node;
+   }
+
+   /*
+    * unary: Method that parses a negated value or a power, powers are calculated from right to left
+    */
+   private Node unary(){
+      if (peek("-")){
+         at++;
+         return new Node("~", unary());
+      }
+      Node node = atom();
+      if (peek("^")){
+         at++;
+         return new Node("^", node, unary());
+      }
+      return node;
+   }
+
+   /*
+    * atom: Method that parses a number, a name, an attribute, a function or an expression in brackets
+    */
+   private Node atom(){
+      skip();
+      if (peek("(")){
+         at++;
+         Node node = sum();
+         expect(")");
+         return node;
+      }
+      int start = at;
+      if (at < text.length() && (Character.isDigit(text.charAt(at)) || text.charAt(at) == '.')){
+         while (at < text.length() && (Character.isDigit(text.charAt(at)) || text.charAt(at) == '.'))
+            at++;
+         if (at < text.length() && (text.charAt(at) == 'e' || text.charAt(at) == 'E')){
+            at++;
+            if (at < text.length() && (text.charAt(at) == '+' || text.charAt(at) == '-'))
+               at++;
+            while (at < text.length() && Character.isDigit(text.charAt(at)))
+               at++;
+         }
+         Node node = new Node("n");
+         try {
+            node.value = Double.parseDouble(text.substring(start, at));
+         }
+         catch (NumberFormatException e){
+            throw error("Bad number " + text.substring(start, at));
+         }
+         return node;
+      }
+      String name = name();
+      if (peek("(")){
+         at++;
+         List<Node> args = new ArrayList<>();
+         if (name.equals("if"))
+            args.add(comparison());
+         else if (!peek(")"))
+            args.add(sum());
+         while (peek(",")){
+            at++;
+            args.add(sum());
+         }
+         expect(")");
+         return function(name, args.toArray(new Node[0]));
+      }
+      Node node = new Node("v");
+      node.name = name;
+      if (at < text.length() && text.charAt(at) == '.'){
+         at++;
+         node.attribute = name();
+      }
+      return node;
+   }
+
+   /*
+    * comparison: Method that parses two values compared with < <= > >= == or !=
+    */
+   private Node comparison(){
+      Node left = sum();
+      skip();
+      for (String op : new String[] {"<=", ">=", "==", "!=", "<", ">"}){
+         if (text.startsWith(op, at)){
+            at += op.length();
+            return new Node(op, left, sum());
+         }
+      }
+      throw error("Expected a comparison");
+   }
+
+   /*
+    * function: Method that checks the name and number of values of a function
+    */
+   private Node function(String name, Node[] args){
+      int count;
+      if (name.equals("if"))
+         count = 3;
+      else if (name.equals("pow") || name.equals("min") || name.equals("max"))
+         count = 2;
+      else if (name.equals("lag") || name.equals("noise") || Arrays.asList(FUNCTIONS).contains(name))
+         count = 1;
+      else
+         throw error("Unknown function " + name);
+      if (args.length != count)
+         throw error(name + " takes " + count + (count == 1 ? " value" : " values"));
+      if (name.equals("lag") && (!args[0].op.equals("v") || args[0].attribute != null))
+         throw error("lag takes a column name");
+      return new Node(name, args);
+   }
+
+   // name: Method for parsing a name of letters, digits and underscores
+   private String name(){
+      skip();
+      int start = at;
+      while (at < text.length() && (Character.isLetterOrDigit(text.charAt(at)) || text.charAt(at) == '_'))
+         at++;
+      if (start == at)
+         throw error(at < text.length() ? "Unexpected '" + text.charAt(at) + "'" : "Unexpected end");
+      return text.substring(start, at);
+   }
+
+   // peek: Method for checking if the next text after any spaces is a given symbol
+   private boolean peek(String symbol){
+      skip();
+      return text.startsWith(symbol, at);
+   }
+
+   // expect: Method for reading a given symbol, which must be next
+   private void expect(String symbol){
+      if (!peek(symbol))
+         throw error("Expected '" + symbol + "'");
+      at += symbol.length();
+   }
+
+   // skip: Method for moving past spaces
+   private void skip(){
+      while (at < text.length() && Character.isWhitespace(text.charAt(at)))
+         at++;
+   }
+
+   // error: Method for an error at the current position of the text
+   private IllegalArgumentException error(String message){
+      return new IllegalArgumentException(message + " at position " + (at + 1) + " of '" + text + "'");
+   }
+}
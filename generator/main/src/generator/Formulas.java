@@ -0,0 +1,403 @@
+package generator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Formulas class holds the calculations of the state and QCS variables, as lines of 'name = expression' in a [state] and a [qcs] section
+// A name set with 'let' is kept for the formulas after it on the same row, other names are dataset columns. 'Column.Row' reads a row of the
+// input or state configuration of a column, such as 'QCS_Caliper.Max', and 'Process.Setting' reads a process setting, such as 'Process.Trim'
+public class Formulas {
+
+   // DEFAULT: The formulas of the paper machine, used when a configuration folder does not have a 'formulas.txt' file
+   public static final String DEFAULT = String.join("\n",
+         "[state]",
+         "# Refining: freeness falls from 1000 towards 300 as specific energy is added",
+         "MV_SWFreeness = 1000 - (1000 - 300) * (1 - 1 / exp(0.5 * MV_SWSpecificEnergy)) + noise(MV_SWFreeness.Noise)",
+         "MV_HWFreeness = 1000 - (1000 - 300) * (1 - 1 / exp(0.5 * MV_HWSpecificEnergy)) + noise(MV_HWFreeness.Noise)",
+         "MV_OCCFreeness = 1000 - (1000 - 300) * (1 - 1 / exp(0.5 * MV_OCCSpecificEnergy)) + noise(MV_OCCFreeness.Noise)",
+         "# Headbox: the jet leaves the slice at the jet to wire ratio times the wire speed",
+         "let JetVelocity = MV_JettoWire * MV_WireSpeed",
+         "MV_HeadboxPressure = if(MV_WireSpeed <= 1, 0, pow(JetVelocity, 2) / (2 * 115920))",
+         "MV_SliceOpening = if(MV_WireSpeed <= 1, 0.2, MV_ThinStockFlow * 12 / (7.48 * JetVelocity * Process.Trim))",
+         "MV_MachineSpeed = if(MV_WireSpeed <= 1, 0, MV_WireSpeed * Process.Draw)",
+         "# Blend of the softwood, hardwood and OCC flows",
+         "let TotalFlow = MV_SWFlow + MV_HWFlow + MV_OCCFlow",
+         "MV_SWPct = if(TotalFlow <= 100, 0, 100 * MV_SWFlow / TotalFlow)",
+         "MV_HWPct = if(TotalFlow <= 100, 0, 100 * MV_HWFlow / TotalFlow)",
+         "MV_OCCPct = if(TotalFlow <= 100, 0, 100 * MV_OCCFlow / TotalFlow)",
+         "PulpEye_BlendFreeness = if(TotalFlow <= 100, 0, (MV_SWFreeness * MV_SWFlow + MV_HWFreeness * MV_HWFlow + MV_OCCFreeness * MV_OCCFlow) / TotalFlow)",
+         "PulpEye_BlendCrill = if(TotalFlow <= 100, 0, (PulpEye_SWCrill * MV_SWFlow + PulpEye_HWCrill * MV_HWFlow + PulpEye_OCCCrill * MV_OCCFlow) / TotalFlow)",
+         "[qcs]",
+         "# Sheet: water drains on the wire and in the press, the dryers remove the rest",
+         "let FiberToHeadbox = lag(MV_ThinStockFlow) * lag(MV_ThinStockConsistency) * 8.3 / 100",
+         "let WaterToHeadbox = lag(MV_ThinStockFlow) * 8.3 - FiberToHeadbox",
+         "let WireDrainage = 5 + 90 * (1 - 1 / exp(lag(PulpEye_BlendFreeness)))",
+         "let WaterToPress = WaterToHeadbox * WireDrainage / 100",
+         "let PressDrainage = 80 * (1 - 1 / exp(lag(MV_PressLoad) / 200))",
+         "let WaterToDryers = WaterToPress * PressDrainage / 100",
+         "let MoistureToDryers = WaterToDryers / FiberToHeadbox",
+         "let MoistureAsymptote = 2.5 + lag(MV_MachineSpeed) / 500",
+         "let Moisture = MoistureAsymptote + (MoistureToDryers - MoistureAsymptote) / exp(lag(MV_SteamPressure) / 25)",
+         "QCS_Moisture = Moisture",
+         "let BoneDryWeight = if(lag(MV_MachineSpeed) <= 1, 0, FiberToHeadbox * 3300 / (lag(MV_MachineSpeed) * Process.Trim))",
+         "QCS_BoneDryWeight = BoneDryWeight",
+         "QCS_BasisWeight = BoneDryWeight * (1 + Moisture / 100)",
+         "# The caliper falls from its max towards half of it as the press load rises",
+         "let CaliperMax = QCS_Caliper.Max * BoneDryWeight / 50",
+         "let CaliperMin = CaliperMax / 2",
+         "QCS_Caliper = CaliperMin + (CaliperMax - CaliperMin) / exp((lag(MV_PressLoad) - 700) * 0.02) + noise(QCS_Caliper.Noise)");
+
+   // Section class holds the formulas of one section, in the order they are calculated
+   static class Section {
+      // names: The name set by each formula
+      List<String> names = new ArrayList<>();
+      // local: Is each name kept for the later formulas ('let'), instead of being a dataset column?
+      List<Boolean> local = new ArrayList<>();
+      // formulas: The parsed formulas
+      List<Formula> formulas = new ArrayList<>();
+      // columns: The dataset column set by each formula, 0 for a name kept for the later formulas
+      int[] columns = new int[0];
+      // kernels: The compiled formulas
+      MethodHandle[] kernels = new MethodHandle[0];
+      // lags: The compiled lag() values, calculated on every row since each row's filter depends on the row before
+      MethodHandle[] lags = new MethodHandle[0];
+      // locals: The values of the names that are not dataset columns, for the current row
+      double[] locals;
+      // data: The dataset the formulas read and set
+      Dataset data;
+      // binding: The binding the formulas were compiled with
+      private Formula.Binding binding;
+      // pruned: Is each formula left out, since none of the columns that are calculated depend on it? (null keeps every formula)
+      boolean[] pruned;
+      // noise: The noise values, drawn by the formulas that are left out
+      private MethodHandle noise;
+
+      /*
+       * run: Method that calculates the formulas of a given row, only on the sample rows of the columns they set unless every row is calculated
+       */
+      void run(int row, boolean everyRow){
+         try {
+            for (MethodHandle lag : lags){
+               double value = (double) lag.invokeExact(row);
+            }
+            if (!calculates(row, everyRow))
+               return;
+            for (int i = 0; i < kernels.length; i++){
+               // A formula that is left out still draws its noise values, so the other formulas draw the same random numbers
+               if (kernels[i] == null){
+                  for (int n = formulas.get(i).noises(); n > 0; n--){
+                     double drawn = (double) noise.invokeExact(0.0);
+                  }
+                  continue;
+               }
+               double value = (double) kernels[i].invokeExact(row);
+               if (columns[i] > 0)
+                  data.set(row, columns[i], value);
+               else
+                  locals[i] = value;
+            }
+         }
+         catch (RuntimeException | Error e){
+            throw e;
+         }
+         catch (Throwable e){
+            throw new IllegalStateException(e);
+         }
+      }
+
+      /*
+       * compile: Method that compiles the formulas for a given dataset, with the column values, attributes, lags and noise of a given binding
+       * A name set with 'let' is read from 'locals' by the formulas after it, other names are read from the binding
+       */
+      void compile(Dataset data, Formula.Binding binding){
+         this.data = data;
+         this.binding = binding;
+         columns = new int[formulas.size()];
+         kernels = new MethodHandle[formulas.size()];
+         locals = new double[formulas.size()];
+         List<String> lagNames = new ArrayList<>();
+         List<MethodHandle> lagKernels = new ArrayList<>();
+         noise = binding.noise();
+         for (int i = 0; i < formulas.size(); i++){
+            // The column of a formula that is left out is still found, so the rows the section is calculated on stay the same
+            if (!local.get(i)){
+               columns[i] = data.searchCol(names.get(i));
+               if (columns[i] == 0)
+                  throw new IllegalArgumentException("Formula for " + names.get(i) + " does not set a column of the dataset, use 'let' for a name kept for later formulas");
+            }
+            if (pruned != null && pruned[i])
+               continue;
+            int defined = i;
+            kernels[i] = formulas.get(i).compile(new Formula.Binding(){
+               @Override
+               public MethodHandle variable(String name){
+                  int at = names.subList(0, defined).lastIndexOf(name);
+                  if (at >= 0 && local.get(at)){
+                     MethodHandle element = MethodHandles.arrayElementGetter(double[].class).bindTo(locals);
+                     return MethodHandles.dropArguments(MethodHandles.insertArguments(element, 0, at), 0, int.class);
+                  }
+                  return binding.variable(name);
+               }
+
+               @Override
+               public double attribute(String column, String row){
+                  return binding.attribute(column, row);
+               }
+
+               @Override
+               public MethodHandle lag(String column){
+                  MethodHandle lag = binding.lag(column);
+                  if (!lagNames.contains(column)){
+                     lagNames.add(column);
+                     lagKernels.add(lag);
+                  }
+                  return lag;
+               }
+
+               @Override
+               public MethodHandle noise(){
+                  return binding.noise();
+               }
+            });
+         }
+         lags = lagKernels.toArray(new MethodHandle[0]);
+      }
+
+      /*
+       * copy: Method that returns the formulas compiled again with their own values of the 'let' names, so another thread can calculate other rows
+       */
+      Section copy(){
+         Section copy = new Section();
+         copy.names = names;
+         copy.local = local;
+         copy.formulas = formulas;
+         copy.pruned = pruned;
+         copy.compile(data, binding);
+         return copy;
+      }
+
+      /*
+       * calculates: Method that checks if the formulas are calculated on a given row, the sample rows of the columns they set unless every row is calculated
+       */
+      boolean calculates(int row, boolean everyRow){
+         if (everyRow)
+            return true;
+         for (int col : columns){
+            if (col > 0 && data.isSample(row, col))
+               return true;
+         }
+         return false;
+      }
+
+      /*
+       * noises: Method that returns the number of random noise values the formulas draw on each row they calculate, -1 when it depends on an if()
+       */
+      int noises(){
+         int count = 0;
+         for (Formula formula : formulas){
+            if (formula.noises() < 0)
+               return -1;
+            count += formula.noises();
+         }
+         return count;
+      }
+
+      /*
+       * depends: Method that adds the dataset columns that the formulas setting a given column read to a given list, through the 'let' names they read
+       * Columns passed to lag() are added too, a column that no formula sets adds nothing
+       */
+      void depends(String column, List<String> list){
+         for (int i = 0; i < formulas.size(); i++){
+            if (!local.get(i) && names.get(i).equals(column))
+               depends(i, list);
+         }
+      }
+
+      // depends: Method for adding the dataset columns read by a given formula and the 'let' formulas it reads to a given list
+      private void depends(int i, List<String> list){
+         List<String> read = new ArrayList<>();
+         List<String> lags = new ArrayList<>();
+         formulas.get(i).names(read, lags);
+         for (String name : lags){
+            if (!list.contains(name))
+               list.add(name);
+         }
+         for (String name : read){
+            int at = names.subList(0, i).lastIndexOf(name);
+            if (at >= 0 && local.get(at))
+               depends(at, list);
+            else if (!list.contains(name))
+               list.add(name);
+         }
+      }
+
+      /*
+       * prune: Method that leaves out the formulas that a given list of needed columns does not depend on, before the formulas are compiled
+       * The formulas setting a needed column are kept along with the 'let' formulas they read. Formulas that draw noise inside an if()
+       * keep the whole section, since the random numbers drawn after them depend on what they calculate
+       */
+      void prune(List<String> needed){
+         pruned = new boolean[formulas.size()];
+         if (noises() < 0)
+            return;
+         Arrays.fill(pruned, true);
+         for (int i = 0; i < formulas.size(); i++){
+            if (!local.get(i) && needed.contains(names.get(i)))
+               keep(i);
+         }
+      }
+
+      // keep: Method for keeping a given formula and the 'let' formulas that it reads
+      private void keep(int i){
+         if (!pruned[i])
+            return;
+         pruned[i] = false;
+         List<String> read = new ArrayList<>();
+         formulas.get(i).names(read, new ArrayList<>());
+         for (String name : read){
+            int at = names.subList(0, i).lastIndexOf(name);
+            if (at >= 0 && local.get(at))
+               keep(at);
+         }
+      }
+
+      // reads: Method for adding the dataset columns that the formulas read to a given list, and the columns passed to lag() to another list
+      private void reads(List<String> list, List<String> lags){
+         for (int i = 0; i < formulas.size(); i++){
+            List<String> read = new ArrayList<>();
+            formulas.get(i).names(read, lags);
+            for (String name : read){
+               int at = names.subList(0, i).lastIndexOf(name);
+               if (!(at >= 0 && local.get(at)) && !list.contains(name))
+                  list.add(name);
+            }
+         }
+      }
+   }
+
+   // state: The formulas of the state variables, calculated on every row
+   Section state = new Section();
+   // qcs: The formulas of the QCS variables, calculated after the state variables
+   Section qcs = new Section();
+
+   private Formulas(){
+   }
+
+   /*
+    * The formulas are parsed straight away, an IllegalArgumentException gives the line of any error
+    */
+   public Formulas(String text){
+      Section section = null;
+      String[] lines = text.split("\r?\n");
+      for (int i = 0; i < lines.length; i++){
+         String line = lines[i].trim();
+         if (line.isEmpty() || line.startsWith("#"))
+            continue;
+         if (line.equalsIgnoreCase("[state]"))
+            section = state;
+         else if (line.equalsIgnoreCase("[qcs]"))
+            section = qcs;
+         else {
+            int equals = line.indexOf('=');
+            if (section == null || equals <= 0)
+               throw new IllegalArgumentException("Line " + (i + 1) + " of the formulas must be [state], [qcs] or name = expression: " + line);
+            try {
+               section.formulas.add(new Formula(line.substring(equals + 1)));
+            }
+            catch (IllegalArgumentException e){
+               throw new IllegalArgumentException("Line " + (i + 1) + " of the formulas: " + e.getMessage());
+            }
+            String name = line.substring(0, equals).trim();
+            boolean local = name.startsWith("let ");
+            section.names.add(local ? name.substring(4).trim() : name);
+            section.local.add(local);
+         }
+      }
+   }
+
+   /*
+    * copy: Method that returns the parsed formulas without being compiled or pruned, so another dataset can compile them without parsing them again
+    * The parsed formulas are not changed once they are parsed, so the copies share them
+    */
+   public Formulas copy(){
+      Formulas copy = new Formulas();
+      copy.state.names = state.names;
+      copy.state.local = state.local;
+      copy.state.formulas = state.formulas;
+      copy.qcs.names = qcs.names;
+      copy.qcs.local = qcs.local;
+      copy.qcs.formulas = qcs.formulas;
+      return copy;
+   }
+
+   /*
+    * columns: Method that returns the dataset columns read or set by the formulas
+    */
+   public List<String> columns(){
+      List<String> list = rowInputs();
+      for (Section section : new Section[] {state, qcs}){
+         for (int i = 0; i < section.names.size(); i++){
+            if (!section.local.get(i) && !list.contains(section.names.get(i)))
+               list.add(section.names.get(i));
+         }
+      }
+      return list;
+   }
+
+   /*
+    * rowInputs: Method that returns the dataset columns that the formulas read, the state formulas and lag() read them on every row
+    */
+   public List<String> rowInputs(){
+      List<String> list = new ArrayList<>();
+      for (Section section : new Section[] {state, qcs}){
+         List<String> lags = new ArrayList<>();
+         section.reads(list, lags);
+         for (String lag : lags){
+            if (!list.contains(lag))
+               list.add(lag);
+         }
+      }
+      return list;
+   }
+
+   /*
+    * inOrder: Method that checks if the formulas must be calculated a section at a time in row order, given the columns calculated after them
+    * That is when the state formulas look back on earlier rows with lag(), a section reads columns that are calculated after it,
+    * or the number of noise values drawn on a row depends on an if()
+    */
+   public boolean inOrder(List<String> later){
+      if (state.noises() < 0 || qcs.noises() < 0)
+         return true;
+      List<String> stateReads = new ArrayList<>();
+      List<String> stateLags = new ArrayList<>();
+      state.reads(stateReads, stateLags);
+      List<String> qcsReads = new ArrayList<>();
+      List<String> qcsLags = new ArrayList<>();
+      qcs.reads(qcsReads, qcsLags);
+      qcsReads.addAll(qcsLags);
+      for (String name : later){
+         if (stateReads.contains(name) || qcsReads.contains(name))
+            return true;
+      }
+      for (String name : qcsColumns()){
+         if (stateReads.contains(name))
+            return true;
+      }
+      return !stateLags.isEmpty();
+   }
+
+   /*
+    * qcsColumns: Method that returns the dataset columns set by the QCS formulas
+    */
+   public List<String> qcsColumns(){
+      List<String> list = new ArrayList<>();
+      for (int i = 0; i < qcs.names.size(); i++){
+         if (!qcs.local.get(i))
+            list.add(qcs.names.get(i));
+      }
+      return list;
+   }
+}
@@ -1,15 +1,18 @@
 package generator;
 
 import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import java.io.*;
-import java.sql.Timestamp;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
 
 // Generator class performs the dataset generation
 public class Generator {
@@ -22,10 +25,18 @@ public class Generator {
    private LinkedHashMap<String, Table<Integer, Integer, String>> labOutputs;
    // state: Data table for the state configurations
    private Table<Integer, Integer, String> state;
-   // data: Data table for the final dataset
-   private Table<Integer, Integer, String> data;
-   // dyn: Data table for the temporary dynamic values
-   private Table<Integer, Integer, String> dyn;
+   // data: Numeric columns for the final dataset
+   private Dataset data;
+   // dynamics: The dynamically moved values of the state, QCS and lab calculations
+   private Dynamics dynamics;
+   // deadTimes, lag1Filters, lag2Filters: The dead time in rows and the first and second lag filters of each input and state dataset column
+   private int[] deadTimes;
+   private double[] lag1Filters;
+   private double[] lag2Filters;
+   // everyRow: Is a dataset column read on every row by the state, QCS or lab calculations?
+   private boolean[] everyRow;
+   // needed: Is a dataset column calculated, since it is written or a written column depends on it? (null calculates every column)
+   private boolean[] needed;
    // startDate: Date at which the final dataset starts at
    String startDate;
    // processPeriod: Process period time
@@ -60,20 +71,145 @@ public class Generator {
    double draw;
    // lastInputCol: The last column for input/state variables
    int lastInputCol;
-   // firstVal: The column number of the first input variable used in calculations
-   int firstVal;
    // dynRow: The final row before dynamics are applied
    int dynRow;
+   // digits: The number of significant digits written for each value (0 for full precision)
+   int digits;
+   // arrow: Is the dataset written as an Arrow IPC file instead of CSV?
+   boolean arrow;
+   // longFormat: Is the dataset written as TIME, TAG, VALUE lines instead of a row for each TIME?
+   boolean longFormat;
+   // byTime: Are the lines of the long format in TIME order, instead of one column after another?
+   boolean byTime;
+   // labInputs: The input columns in the lab configurations
+   private List<Integer> labInputs;
+   // labStates: The state table columns in the lab configurations
+   private List<Integer> labStates;
+   // formulas: The compiled calculations of the state and QCS variables
+   private Formulas formulas;
+   // process: HashMap for the process configurations, read by the formulas
+   private HashMap<String, Double> process;
+   // qcsAllRows: Are the QCS values calculated on every row, instead of only their sample rows?
+   boolean qcsAllRows;
+   // continuous: The continuous mode (0 for a single move schedule, 1 to cycle the move schedule, 2 for random moves)
+   int continuous;
+   // totalRows: The number of rows generated in continuous mode (0 for no limit)
+   long totalRows;
+   // cycle: The inputs of the current move schedule in continuous mode
+   private Dataset cycle;
+   // rowOffset: The number of rows before the current move schedule in continuous mode
+   int rowOffset;
+   // target: The value each input is moving to in the random continuous mode
+   private double[] target;
+   // randomMin, randomMax, randomNoise, sinePeriods, amplitudes, mvFilters: The settings of each input in the random continuous mode, read on its first row
+   private double[] randomMin;
+   private double[] randomMax;
+   private double[] randomNoise;
+   private double[] sinePeriods;
+   private double[] amplitudes;
+   private double[] mvFilters;
+   // rollRows: The number of rows in each output file (0 for no limit)
+   long rollRows;
+   // rollBytes: The largest size of each output file in bytes (0 for no limit)
+   long rollBytes;
+   // rollHours: The simulated hours in each output file (0 for no limit)
+   double rollHours;
+   // threads: The number of threads that format the rows of the output file
+   int threads;
+   // seed: The seed of the random numbers, each number is calculated from the seed and the count of numbers drawn before it
+   long seed;
+   // draws: The count of random numbers drawn
+   private long draws;
+   // cycleDraws: The count of random numbers drawn before the current move schedule in continuous mode
+   private long cycleDraws;
+   // schedule: The moves of the input variables, the same for every cycle in continuous mode
+   private MoveSchedule schedule;
+   // firstRow: The first row generated, later than the first dataset row when resuming from a checkpoint
+   private int firstRow = Dataset.FIRST_ROW;
+   // aggregateSeconds: The interval of the statistics written to a file of their own as the rows are written (0 for none)
+   private int aggregateSeconds;
+   // aggregateStats: The statistics written for each written column and interval (see Aggregator.STATS)
+   private List<String> aggregateStats;
+   // aggregateOnly: Are only the statistics written, instead of the rows as well?
+   private boolean aggregateOnly;
+   // summarize: Is a summary of the statistics of each written column written alongside the dataset?
+   boolean summarize;
+   // aggregator: The interval statistics of the dataset being written (null when they are not written)
+   private Aggregator aggregator;
+   // summary: The summary of the columns of the dataset being written (null when it is not written)
+   private Summary summary;
+   // windowLast: The last row written when only a window of the move schedule is generated (0 for the end of the move schedule)
+   private int windowLast;
+   // calcFirst: The first row calculated, the warm-up rows before a window are calculated but not written
+   private int calcFirst = Dataset.FIRST_ROW;
+   // calcLast: The last row calculated (0 for the end of the move schedule)
+   private int calcLast;
+   // checkpointFile: The file that the generation state is saved to (null for no checkpoints)
+   private String checkpointFile;
+   // checkpointRows: The number of rows between checkpoints in continuous mode (0 for only at the end)
+   private long checkpointRows;
+   // checkpointSaved: Has this run saved a checkpoint?
+   private boolean checkpointSaved;
+   // cancelled: Has the generation been cancelled?
+   private volatile boolean cancelled;
+   // CHECKPOINT_MAGIC: The first bytes of a checkpoint file ("DGCK")
+   private static final int CHECKPOINT_MAGIC = 0x4447434B;
+   // CHECKPOINT_VERSION: The version of the checkpoint file layout
+   private static final int CHECKPOINT_VERSION = 1;
+   // BLOCK_ROWS: The number of rows in each task of the graph that calculates the state, QCS and lab variables
+   private static final int BLOCK_ROWS = 65536;
+   // PIPELINE_BLOCK_ROWS: The number of rows in each block passed between the stages of continuous mode
+   private static final int PIPELINE_BLOCK_ROWS = 1024;
+   // PIPELINE_STAGES: The number of stages of continuous mode (inputs, state, QCS, lab and writing)
+   private static final int PIPELINE_STAGES = 5;
+   // WARMUP_ERROR: The part of where a lag started from that is left at the end of the warm-up before a window
+   private static final double WARMUP_ERROR = 1e-9;
+   // taskDraws: The count of random numbers drawn by the graph task or pipeline stage running on each thread, null when the rows are calculated in order
+   private final ThreadLocal<long[]> taskDraws = new ThreadLocal<>();
+
+   // Dynamics class holds the latest dynamically moved value of each dataset column, for a pass over the rows that moves them
+   private static class Dynamics {
+      // result: The latest dynamically moved value of each dataset column
+      double[] result;
+      // prior: The previous dynamically moved value of each dataset column
+      double[] prior;
+      // at: The row that the dynamic values of each dataset column were last calculated for
+      int[] at;
+
+      Dynamics(int columns){
+         result = new double[columns];
+         prior = new double[columns];
+         at = new int[columns];
+      }
+   }
 
    public Generator(Table<Integer, Integer, String> input, Table<Integer, Integer, String> output, LinkedHashMap<String, Table<Integer, Integer, String>> labOutputs,
                     Table<Integer, Integer, String> state, HashMap<String, Double> process, String startDate){
+      this(input, output, labOutputs, state, process, startDate, Formulas.DEFAULT);
+   }
+
+   /*
+    * The state and QCS variables are calculated with the given formulas (see 'Formulas.java'), compiled once for the dataset
+    */
+   public Generator(Table<Integer, Integer, String> input, Table<Integer, Integer, String> output, LinkedHashMap<String, Table<Integer, Integer, String>> labOutputs,
+                    Table<Integer, Integer, String> state, HashMap<String, Double> process, String startDate, String formulas){
+      this(input, output, labOutputs, state, process, startDate, new Formulas(formulas), null);
+   }
+
+   /*
+    * The parsed formulas and the move schedule can be shared with other datasets of the same configurations, they are not changed by the dataset
+    * The formulas are compiled again for this dataset, and the move schedule is worked out when it is first needed if it is null
+    */
+   public Generator(Table<Integer, Integer, String> input, Table<Integer, Integer, String> output, LinkedHashMap<String, Table<Integer, Integer, String>> labOutputs,
+                    Table<Integer, Integer, String> state, HashMap<String, Double> process, String startDate, Formulas formulas, MoveSchedule schedule){
       this.input = input;
       this.output = output;
       this.labOutputs = labOutputs;
       this.state = state;
       this.startDate = startDate;
-      data = TreeBasedTable.create();
-      firstVal = 2;
+      this.process = process;
+      this.formulas = formulas.copy();
+      this.schedule = schedule;
 
       processPeriod = process.get("Process").intValue();
       qcsPeriod = process.get("QCS").intValue();
@@ -89,6 +225,37 @@ public class Generator {
       numOutputs = labOutputs.keySet().size();
       numState = state.columnKeySet().size() - 1;
       lastInputCol = numInputs + numState + 1;
+      // Values are stored as float32 instead of double when 'Float' is 1, and written with 'Digits' significant digits (0 for full precision)
+      boolean single = process.getOrDefault("Float", 0.0) == 1;
+      digits = process.getOrDefault("Digits", 0.0).intValue();
+      // Continuous mode only keeps the rows that the dynamics look back on, so memory stays the same however long it runs
+      continuous = process.getOrDefault("Continuous", 0.0).intValue();
+      totalRows = process.getOrDefault("Rows", 0.0).longValue();
+      // The output is split into several files when any of the 'Roll' limits are set, with a manifest of the files
+      rollRows = process.getOrDefault("RollRows", 0.0).longValue();
+      rollBytes = process.getOrDefault("RollBytes", 0.0).longValue();
+      rollHours = process.getOrDefault("RollHours", 0.0);
+      // A 'Format' of 1 writes an Arrow IPC file, with full precision values and empty values as nulls
+      arrow = process.getOrDefault("Format", 0.0) == 1;
+      // A 'Format' of 2 writes a line for each sample, column by column or in TIME order across every rate when 'ByTime' is 1
+      longFormat = process.getOrDefault("Format", 0.0) == 2;
+      byTime = process.getOrDefault("ByTime", 0.0) == 1;
+      // A 'Summary' of 1 writes the statistics of each written column to a JSON file alongside the dataset
+      summarize = process.getOrDefault("Summary", 0.0) == 1;
+      // 'Threads' of 0 uses a thread for each processor
+      threads = process.getOrDefault("Threads", 0.0).intValue();
+      if (threads <= 0)
+         threads = Runtime.getRuntime().availableProcessors();
+      // A 'Seed' of 0 uses a different seed for each run
+      seed = process.getOrDefault("Seed", 0.0).longValue();
+      if (seed == 0)
+         seed = newSeed();
+      // 'Storage' keeps the values on the heap (0), outside of the heap (1) or in memory mapped files (2), freed as soon as the dataset is written
+      int storage = process.getOrDefault("Storage", 0.0).intValue();
+      if (continuous > 0)
+         data = new Dataset(lastInputCol + numOutputs, single, windowRows(), storage);
+      else
+         data = new Dataset(lastInputCol + numOutputs, single, 0, storage);
 
       int deadtime = max(3);
       int lag1 = max(4);
@@ -96,29 +263,201 @@ public class Generator {
       int maxSettle = process.get("Settle").intValue() + deadtime + lag1 + lag2;
       inputSettle = Math.max(maxSettle, labPeriod);
       // Creating the dataset heading names
-      data.put(1, 1, "TIME");
-      data.put(2, 1, "");
+      data.setHeading(1, "TIME", "");
       for (int i = 2; i <= numInputs + 1; i++){
-         data.put(1, i, input.get(1, i));
-         data.put(2, i, input.get(2, i));
+         data.setHeading(i, input.get(1, i), input.get(2, i));
       }
       int lastCol;
       for (int i = 2; i <= numState + 1; i++){
          lastCol = i + numInputs;
-         data.put(1, lastCol, state.get(1, i));
-         data.put(2, lastCol, state.get(2, i));
+         data.setHeading(lastCol, state.get(1, i), state.get(2, i));
       }
       for (int i = 2; i <= numOutputs + 1; i++){
          lastCol = i + numInputs + numState;
-         data.put(1, lastCol, output.get(1, i));
-         data.put(2, lastCol, output.get(2, i));
+         data.setHeading(lastCol, output.get(1, i), output.get(2, i));
       }
 
-      dyn = TreeBasedTable.create();
-      for (int i = 2; i <= lastInputCol + 1; i++){
-         dyn.put(1, i, data.get(1, i));
-      }
+      dynamics = new Dynamics(lastInputCol + 2);
       dynRow = Math.round(maxSettle / processPeriod) + 3;
+      setFilters();
+      setPeriods();
+      compileFormulas();
+   }
+
+   /*
+    * compileFormulas: Method that compiles the state and QCS formulas into method handles that read and set the dataset
+    */
+   private void compileFormulas(){
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodHandle get;
+      MethodHandle lag;
+      MethodHandle noise;
+      try {
+         get = lookup.findVirtual(Dataset.class, "get", MethodType.methodType(double.class, int.class, int.class)).bindTo(data);
+         lag = lookup.findVirtual(Generator.class, "lag", MethodType.methodType(double.class, int.class, int.class, boolean.class)).bindTo(this);
+         noise = lookup.findVirtual(Generator.class, "calcNoise", MethodType.methodType(double.class, double.class)).bindTo(this);
+      }
+      catch (ReflectiveOperationException e){
+         throw new IllegalStateException(e);
+      }
+      Formula.Binding binding = new Formula.Binding(){
+         @Override
+         public MethodHandle variable(String name){
+            int col = searchCol(name, data);
+            if (col == 0)
+               throw new IllegalArgumentException("Formula variable " + name + " is not an input or state variable");
+            return MethodHandles.insertArguments(get, 1, col);
+         }
+
+         @Override
+         public double attribute(String column, String row){
+            return formulaAttribute(column, row);
+         }
+
+         @Override
+         public MethodHandle lag(String column){
+            boolean isInput = tableCol(column, input) > 0;
+            int col = isInput ? tableCol(column, input) : tableCol(column, state);
+            if (col == 0)
+               throw new IllegalArgumentException("Formula lag(" + column + ") is not an input or state variable");
+            return MethodHandles.insertArguments(lag, 1, col, isInput);
+         }
+
+         @Override
+         public MethodHandle noise(){
+            return noise;
+         }
+      };
+      formulas.state.compile(data, binding);
+      formulas.qcs.compile(data, binding);
+   }
+
+   // formulaAttribute: Method for the value of a formula's 'Column.Row', a process setting for the column 'Process' or else a row of the input or state configurations
+   private double formulaAttribute(String column, String row){
+      if (column.equals("Process")){
+         if (!process.containsKey(row))
+            throw new IllegalArgumentException("Formula attribute Process." + row + " is not a process setting");
+         return process.get(row);
+      }
+      for (Table<Integer, Integer, String> table : Arrays.asList(input, state)){
+         int col = tableCol(column, table);
+         if (col == 0)
+            continue;
+         for (int r : table.column(1).keySet()){
+            String label = table.get(r, 1).trim();
+            if (label.equalsIgnoreCase(row) || label.toLowerCase().startsWith(row.toLowerCase() + " "))
+               return Double.parseDouble(table.get(r, col));
+         }
+         throw new IllegalArgumentException("Formula attribute " + column + "." + row + " is not a row of the configurations");
+      }
+      throw new IllegalArgumentException("Formula attribute " + column + "." + row + " is not an input or state variable");
+   }
+
+   // tableCol: Method for the column of a given name in a given configuration table, 0 if it is not there
+   private int tableCol(String name, Table<Integer, Integer, String> table){
+      for (Map.Entry<Integer, String> entry : table.row(1).entrySet()){
+         if (entry.getKey() > 1 && name.equals(entry.getValue()))
+            return entry.getKey();
+      }
+      return 0;
+   }
+
+   /*
+    * historyRows: Method that returns the number of rows kept in continuous mode, enough for the dead times and lags to look back on
+    */
+   private int historyRows(){
+      return deadRows() + 8;
+   }
+
+   /*
+    * windowRows: Method that returns the number of rows the dataset keeps in continuous mode, the history along with the rows between the pipeline stages
+    */
+   private int windowRows(){
+      return historyRows() + RowPipeline.inFlight(PIPELINE_STAGES, PIPELINE_BLOCK_ROWS);
+   }
+
+   /*
+    * deadRows: Method that returns the largest dead time of all input and state variables in rows
+    */
+   private int deadRows(){
+      int max = 0;
+      for (int i = 2; i < numInputs + 2; i++){
+         max = Math.max(max, (int) (Double.parseDouble(input.get(3, i)) * 60 / processPeriod));
+      }
+      for (int i = 2; i < numState + 2; i++){
+         max = Math.max(max, (int) (Double.parseDouble(state.get(3, i)) * 60 / processPeriod));
+      }
+      return max;
+   }
+
+   /*
+    * warmupRows: Method that returns the number of rows calculated before a window, for the dead times and for the lags to settle
+    * The dynamics start from the values the dead times look back on, and a lag keeps (1 - filter)^n of where it started after n rows,
+    * so each lag runs until less than WARMUP_ERROR of it is left
+    */
+   private int warmupRows(){
+      int max = 0;
+      for (int i = 2; i < numInputs + 2; i++){
+         max = Math.max(max, lagRows(input, i));
+      }
+      for (int i = 2; i < numState + 2; i++){
+         max = Math.max(max, lagRows(state, i));
+      }
+      return deadRows() + 2 + max;
+   }
+
+   // lagRows: Method for the number of rows that the two lags of a given input or state table column take to settle
+   private int lagRows(Table<Integer, Integer, String> table, int col){
+      int rows = 0;
+      for (int r = 4; r <= 5; r++){
+         double lag = Double.parseDouble(table.get(r, col));
+         double filterVal = lag <= 0 ? 1 : 0.63 / (lag * 60 / processPeriod);
+         if (filterVal < 1)
+            rows += (int) Math.ceil(Math.log(WARMUP_ERROR) / Math.log(1 - filterVal));
+      }
+      return rows;
+   }
+
+   /*
+    * setPeriods: Method that sets the number of rows between the samples of the QCS, PulpEye and lab columns
+    * Columns that are not read on every row by a calculation only store their sample rows
+    */
+   private void setPeriods(){
+      everyRow = new boolean[data.columns() + 1];
+      // The formulas read their variables on every row
+      for (String name : formulas.rowInputs()){
+         everyRow[searchCol(name, data)] = true;
+      }
+      // Variables in the lab configurations are dynamically moved, which reads them on every row
+      labInputs = new ArrayList<>();
+      calcList(labInputs, numInputs, input);
+      for (int col : labInputs){
+         everyRow[col] = true;
+      }
+      labStates = new ArrayList<>();
+      calcList(labStates, numState, state);
+      for (int col : labStates){
+         everyRow[col + numInputs] = true;
+      }
+
+      for (int col = 2; col <= data.columns(); col++){
+         String name = data.name(col);
+         if (col > lastInputCol)
+            data.setPeriod(col, labPeriod / processPeriod);
+         else if (name.contains("QCS"))
+            data.setPeriod(col, qcsPeriod / processPeriod);
+         else if (name.contains("PulpEye"))
+            data.setPeriod(col, pulpeyePeriod / processPeriod);
+         // Input columns are compacted after createInputs, since the moves are calculated from the previous rows
+         if (col > numInputs + 1 && !everyRow[col])
+            data.compact(col);
+      }
+      // The QCS values are only calculated on their sample rows, unless one of them is read on every row
+      qcsAllRows = false;
+      for (String name : formulas.qcsColumns()){
+         if (!data.isCompact(searchCol(name, data)))
+            qcsAllRows = true;
+      }
    }
 
    /*
@@ -136,14 +475,44 @@ public class Generator {
     * calcNoise: Method that calculates a random noise value from a given value
     */
    private double calcNoise (double noise){
-      return 2 * Math.random() * noise - noise;
+      long[] task = taskDraws.get();
+      double random = task == null ? random() : random(seed, ++task[0]);
+      return 2 * random * noise - noise;
+   }
+
+   /*
+    * random: Method that returns the next random number between 0 and 1
+    * The number only depends on the seed and the count of numbers drawn (SplitMix64), so a checkpoint only needs the count to continue the same numbers
+    */
+   private double random(){
+      return random(seed, ++draws);
+   }
+
+   /*
+    * newSeed: Method that picks a seed for a run without a 'Seed', never 0 as that means no seed
+    */
+   static long newSeed(){
+      long seed;
+      do
+         seed = new Random().nextLong();
+      while (seed == 0);
+      return seed;
+   }
+
+   // random: Method for the random number of a given seed and count, used by random() and by the graph tasks with their own count
+   private static double random(long seed, long draws){
+      long z = seed + draws * 0x9E3779B97F4A7C15L;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      z = z ^ (z >>> 31);
+      return (z >>> 11) * 0x1.0p-53;
    }
 
    /*
     * calcSine: Method that calculates a random sine value from a given value
     */
    private double calcSine (double period, double amplitude, int row){
-      double value = 360 * (row * (processPeriod / period));
+      double value = 360 * ((row + rowOffset) * (processPeriod / period));
       double degrees = value % 360;
       double radians = Math.toRadians(degrees);
       return Math.sin(radians) * amplitude;
@@ -161,416 +530,425 @@ public class Generator {
       return 0;
    }
 
+   /*
+    * searchCol: Method returns the column number of a given name from the dataset
+    */
+   private int searchCol (String name, Dataset d){
+      return d.searchCol(name);
+   }
+
    /*
     * calcList: Method that adds variables to a given list of a given column size if the variables are present in lab configurations
     */
    private void calcList(List<Integer> list, int size, Table<Integer, Integer, String> table){
       for (String i: labOutputs.keySet()){
-         for (int j = 2; j <= labOutputs.get(i).rowKeySet().size(); j++) {
-            for (int c = 2; c <= size + 1; c++) {
-               if (labOutputs.get(i).get(j, 1).equals(table.get(1, c))) {
-                  if (!list.contains(c))
-                     list.add(c);
-               }
-            }
-         }
+         labList(i, list, size, table);
       }
    }
 
    /*
-    * write: Method for writing to a CSV file given the file name and whether the table should be final
+    * labList: Method that adds variables to a given list of a given column size if the variables are present in a given lab configuration
     */
-   private void write(boolean table, String name){
-      Table<Integer, Integer, String> t;
-      if (!table) {
-         t = TreeBasedTable.create();
-         for (int i = 1; i <= finalRow; i++){
-            // When writing to the temporary dataset, not all columns are written to save memory
-            for (int j = 1; j < firstVal; j++){
-               t.put(i, j, data.get(i, j));
+   private void labList(String name, List<Integer> list, int size, Table<Integer, Integer, String> table){
+      for (int j = 2; j <= labOutputs.get(name).rowKeySet().size(); j++) {
+         for (int c = 2; c <= size + 1; c++) {
+            if (labOutputs.get(name).get(j, 1).equals(table.get(1, c))) {
+               if (!list.contains(c))
+                  list.add(c);
             }
          }
       }
-      else
-         t = data;
-      try {
-         BufferedWriter writer = new BufferedWriter(new FileWriter("data/" + name + ".csv"));
-         /*
-          * Below code was adapted from the question in this website: https://stackoverflow.com/questions/38524942/guava-table-to-csv
-          */
-         CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
-         printer.printRecords(t.rowMap().values().stream().map(x -> x.values()).collect(Collectors.toList()));
-         // End of code reference
-         printer.flush();
-         writer.close();
-      } catch (Exception e) {
-         e.printStackTrace();
-      }
    }
 
    /*
-    * read: Method for reading the temporary CSV file into a data table given the column limit
+    * write: Method for writing the dataset to a CSV file, or an Arrow file, given the file name
     */
-   private void read(int last){
+   private void write(String name){
+      RollingWriter writer = null;
+      ArrowWriter arrowWriter = null;
       try {
-         /*
-          * Below code was adapted from the first answer in this website: https://stackoverflow.com/questions/42170837/how-to-read-a-csv-file-into-an-array-list-in-java
-          */
-         File file = new File("data/data.csv");
-         List<String[]> csv = new ArrayList<>();
-         BufferedReader br = new BufferedReader(new FileReader(file));
-         String line;
-         while ((line = br.readLine()) != null) {
-            csv.add(line.split(","));
+         // The TIME column is not stored, each row is the start date plus a process period for every row before it
+         int lastRow = continuous > 0 ? lastRow() : windowEnd();
+         // The interval statistics and the summary are worked out from the rows as they are written. A batch dataset already has all of its rows,
+         // so they are added first, and in continuous mode each row is added as it is written (or only added when the rows are not written)
+         if (aggregateSeconds > 0)
+            aggregator = new Aggregator("data/" + name + "-" + aggregateSeconds + "s", data, startDate, processPeriod, digits, aggregateSeconds, aggregateStats);
+         if (summarize)
+            summary = summary();
+         boolean observed = aggregator != null || summary != null;
+         if (observed && (continuous == 0 || aggregateOnly))
+            observe(lastRow);
+         boolean each = observed && continuous > 0;
+         if (aggregateOnly){
+            // Only the statistics are written
          }
-         // End of code reference
-         br.close();
-         int r = 0;
-         int c = 0;
-         for (String[] row : csv) {
-            r++;
-            for (String cell : row) {
-               c++;
-               if (c > last)
-                  break;
-               // Without the toString() call, the value would not be correct
-               data.put(r, c, cell.toString());
-
+         else if (arrow){
+            // Rows are gathered into record batches, the file can only be read once its footer is written at the end
+            arrowWriter = new ArrowWriter("data/" + name, data, startDate, processPeriod);
+            ArrowWriter batches = arrowWriter;
+            if (pipelined())
+               pipeline(firstRow, lastRow, block -> {
+                  for (int row = block.first; row <= block.last; row++){
+                     batches.write(row);
+                     if (each)
+                        observeRow(row);
+                  }
+               });
+            else {
+               for (int row = firstRow; row <= lastRow; row++){
+                  checkCancelled();
+                  if (continuous > 0)
+                     nextRow(row);
+                  arrowWriter.write(row);
+                  if (each)
+                     observeRow(row);
+               }
+            }
+            arrowWriter.close();
+         }
+         else {
+            RowFormatter formatter = new RowFormatter(data, startDate, processPeriod, digits, longFormat);
+            writer = new RollingWriter("data/" + name, formatter, rollRows, rollBytes, rollHours, processPeriod);
+            // A batch dataset in the long format is written one column after another, straight from the samples that are stored
+            if (longFormat && !byTime && continuous == 0){
+               writeColumns(formatter, writer);
+               writer.close();
+            }
+            // Formatting takes most of the time of a batch dataset, so it is split over several threads when they are available
+            else if (continuous == 0 && threads > 1){
+               new BlockFormatter(data, startDate, processPeriod, digits, threads, longFormat).write(firstRow, lastRow, writer, this::isCancelled);
+               writer.close();
+            }
+            else {
+               // Rows are written on a separate thread, so the next rows are calculated and formatted while the disk is busy
+               AsyncWriter output = new AsyncWriter(writer, data, startDate, processPeriod, digits, longFormat);
+               try {
+                  if (pipelined())
+                     pipeline(firstRow, lastRow, block -> {
+                        for (int row = block.first; row <= block.last; row++){
+                           output.write(row);
+                           if (each)
+                              observeRow(row);
+                        }
+                     });
+                  else {
+                     for (int row = firstRow; row <= lastRow; row++){
+                        checkCancelled();
+                        // Continuous mode calculates each row just before it is written
+                        if (continuous > 0)
+                           nextRow(row);
+                        output.write(row);
+                        if (each)
+                           observeRow(row);
+                        // The rows are on disk before the checkpoint is saved, so a resumed run carries on from the end of the file
+                        if (checkpointFile != null && checkpointRows > 0 && (row - firstRow + 1) % checkpointRows == 0 && row < lastRow){
+                           output.flush();
+                           saveCheckpoint(row + 1);
+                        }
+                        if (row == Integer.MAX_VALUE)
+                           break;
+                     }
+                  }
+               }
+               catch (IOException | RuntimeException e){
+                  output.abort();
+                  throw e;
+               }
+               output.close();
             }
-            c = 0;
          }
-         // File is no longer necessary so it can be deleted
-         file.delete();
-      } catch (Exception e) {
-         e.printStackTrace();
+         if (aggregator != null)
+            aggregator.close();
+         if (summary != null)
+            summary.write("data/" + name + "-summary.json", seed);
+         // The final checkpoint lets the dataset be extended later
+         if (checkpointFile != null && lastRow < Integer.MAX_VALUE)
+            saveCheckpoint(lastRow + 1);
+      } catch (IOException | RuntimeException e) {
+         // The files of a cancelled or failed dataset are incomplete, so they are removed, along with a checkpoint that follows on from them
+         if (writer != null)
+            writer.delete();
+         if (arrowWriter != null)
+            arrowWriter.delete();
+         if (aggregator != null)
+            aggregator.delete();
+         if (checkpointFile != null){
+            if (checkpointSaved)
+               new File(checkpointFile).delete();
+            new File(checkpointFile + ".tmp").delete();
+         }
+         if (e instanceof IOException)
+            throw new UncheckedIOException("Cannot write dataset " + name, (IOException) e);
+         throw (RuntimeException) e;
+      } finally {
+         free();
       }
    }
 
-
    /*
-    * createInputs: Method that creates the input variable data
-    * Determines the number of rows to represent each move, it needs to be the longer of the MV settling time or the lab sample period
+    * observe: Method that adds the rows from the first row to a given last row to the interval statistics and the summary, without writing them
+    * In continuous mode each row is calculated just before it is added
     */
-   public void createInputs(){
-
-	System.out.println("createInputs");
-
-      double rowsPerMove = inputSettle / processPeriod;
-      int rowsPerProcess = 1;
-      int firstRow = 3;
-      int lastInCol = numInputs + 2;
-      int row = 0;
-      int lastRow = 0;
-
-      // Steady state rows
-      // Fill in steady state rows with the average value of input
-      for (int i = 2; i < lastInCol; i++) {
-         double min = Double.parseDouble(input.get(9, i));
-         double max = Double.parseDouble(input.get(8, i));
-         double avg = min + (max - min) / 2;
-         double noise = Double.parseDouble(input.get(6, i));
-         double sinePeriod = Double.parseDouble(input.get(10, i));
-         double amplitude = Double.parseDouble(input.get(11, i));
-         for (int j = 1; j <= (rowsPerMove / rowsPerProcess); j++) {
-            double noiseVal = calcNoise(noise);
-            row = firstRow - 1 + rowsPerProcess * j;
-            double sineVal = calcSine(sinePeriod, amplitude, row);
-            data.put(row, i, String.valueOf((avg + noiseVal + sineVal)));
+   private void observe(int lastRow) throws IOException {
+      if (pipelined())
+         pipeline(firstRow, lastRow, block -> {
+            for (int row = block.first; row <= block.last; row++)
+               observeRow(row);
+         });
+      else {
+         for (int row = firstRow; row <= lastRow; row++){
+            checkCancelled();
+            if (continuous > 0)
+               nextRow(row);
+            observeRow(row);
+            if (row == Integer.MAX_VALUE)
+               break;
          }
-         lastRow = row;
-      }
-      lastSteadyStateRow = lastRow;
-
-      // Uncoupled moves rows
-      // Moves inputs uncoupled (independently)
-      for (int i = 2; i < lastInCol; i++) {
-         double min = Double.parseDouble(input.get(9, i));
-         double max = Double.parseDouble(input.get(8, i));
-         int order = Integer.parseInt(input.get(12, i));
-         double sinePeriod = Double.parseDouble(input.get(10, i));
-         double amplitude = Double.parseDouble(input.get(11, i));
-         double stepSize;
-
-         if (uncoupledMoves != 0)
-            stepSize = (max - min) / uncoupledMoves;
-         else
-            stepSize = max - min;
-         double mvLag = Double.parseDouble(input.get(7, i));
+      }
+   }
 
-         double filter;
-         double mvFilter;
-         if (mvLag <= 0)
-            filter = 1;
-         else
-            filter = 0.63 / (mvLag / (rowsPerProcess * processPeriod));
-         if (filter > 1)
-            mvFilter = 1;
-         else
-            mvFilter = filter;
-
-         lastRow = lastSteadyStateRow;
-         double noise = Double.parseDouble(input.get(6, i));
-         double lastMove = min;
-         for (int j = 0; j <= uncoupledMoves; j++) {
-            double move = min + stepSize * j;
-            for (int id = 1; id <= numInputs; id++) {
-               double next;
-               if (order == id) {
-                  next = move;
-                  lastMove = move;
-               }
-               else
-                  next = lastMove;
-               for (int x = 1; x <= (rowsPerMove / rowsPerProcess); x++) {
-                  row = lastRow + rowsPerProcess * x;
-                  double noiseVal = calcNoise(noise);
-                  double sineVal = calcSine(sinePeriod, amplitude, row);
-                  double priorVal = Double.parseDouble(data.get(row-1, i));
-                  double newVal = priorVal * (1 - mvFilter) + next * mvFilter;
-                  if (newVal < min)
-                     newVal = min;
-                  else if (newVal > max)
-                     newVal = max;
-                  data.put(row, i, String.valueOf((newVal + noiseVal + sineVal)));
-               }
-               lastRow = row;
-            }
-            lastMove = move;
-         }
-      }
-
-	System.out.println("createInputs row " + row + " lastRow " + lastRow );
-      int lastInRow = lastRow;
-
+   // observeRow: Method for adding a given row to the interval statistics and the summary, when they are written
+   private void observeRow(int row) throws IOException {
+      if (aggregator != null)
+         aggregator.add(row);
+      if (summary != null)
+         summary.add(row);
+   }
 
-
-      // Set all inputs to average for settling time
-      for (int i = 2; i < lastInCol; i++) {
-         double min = Double.parseDouble(input.get(9, i));
-         double max = Double.parseDouble(input.get(8, i));
-         double avg = min + (max - min) / 2;
-         double noise = Double.parseDouble(input.get(6, i));
-         double sinePeriod = Double.parseDouble(input.get(10, i));
-         double amplitude = Double.parseDouble(input.get(11, i));
-
-//	System.out.print("createInputs settle 1 input " + i + " avg " + avg + " lastRow " + lastRow);
-//	System.out.println();
-
-	// 12/18/25 start at lastInRow
-         for (int j = 1; j <= (rowsPerMove / rowsPerProcess); j++) {
-            double noiseVal = calcNoise(noise);
-            row = lastRow - 1 + rowsPerProcess * j;
-            double sineVal = calcSine(sinePeriod, amplitude, row);
-            data.put(row, i, String.valueOf((avg + noiseVal + sineVal)));
-//	System.out.println("createInputs settle 1 input " + i + " avg " + avg + " lastRow " + lastRow  + " row " + row + " data " + String.valueOf((avg + noiseVal + sineVal)) );
+   /*
+    * summary: Method that returns a new summary of the written columns, with the Min and Max of their configurations
+    */
+   private Summary summary(){
+      Summary summary = new Summary(data, startDate, processPeriod);
+      for (int i = 2; i <= numInputs + 1; i++)
+         summary.setRange(i, number(input.get(9, i)), number(input.get(8, i)));
+      for (int i = 2; i <= numState + 1; i++)
+         summary.setRange(i + numInputs, number(state.get(8, i)), number(state.get(7, i)));
+      for (int i = 2; i <= numOutputs + 1; i++)
+         summary.setRange(i + lastInputCol - 1, number(output.get(5, i)), number(output.get(4, i)));
+      return summary;
+   }
+
+   // number: Method for the number of a configuration value, NaN when it is blank or not a number
+   private static double number(String value){
+      try {
+         return Double.parseDouble(value);
+      }
+      catch (NullPointerException | NumberFormatException e){
+         return Double.NaN;
+      }
+   }
+
+   /*
+    * writeColumns: Method that writes the samples of every column in the long format, one column after another
+    * Only the sample rows of each column are visited, so the empty rows of the QCS, PulpEye and lab columns cost nothing. Each line is a row of the writer
+    */
+   private void writeColumns(RowFormatter formatter, RollingWriter writer) throws IOException {
+      for (int col = 2; col <= data.columns(); col++){
+         if (!data.isWritten(col))
+            continue;
+         // The first sample of the column in the window
+         int first = Dataset.FIRST_ROW + (firstRow - Dataset.FIRST_ROW + data.period(col) - 1) / data.period(col) * data.period(col);
+         for (int row = first; row <= windowEnd(); row += data.period(col)){
+            checkCancelled();
+            formatter.reset();
+            formatter.appendSample(row, col);
+            if (formatter.length() > 0)
+               writer.write(row, formatter.buffer(), 0, formatter.length());
          }
-//         lastRow = row;
-//	System.out.print("createInputs settle 1 input " + i + " avg " + avg + " lastRow " + lastRow  + " row " + row);
-//	System.out.println();
-      }
-      lastRow = row;
-      lastSteadyStateRow = lastRow;
-//	System.out.println("createInputs settle 1 complete lastRow " + lastRow);
-
-// Start isolated moves
-// 3/3/24 Isolated moves rows
-      for (int i = 2; i < lastInCol; i++) 
-	{
-         double min = Double.parseDouble(input.get(9, i));
-         double max = Double.parseDouble(input.get(8, i));
-         double avg = min + (max - min) / 2;
-         int order = Integer.parseInt(input.get(12, i));
-         double sinePeriod = Double.parseDouble(input.get(10, i));
-         double amplitude = Double.parseDouble(input.get(11, i));
-         double stepSize;
-         double move;
-	double priorVal;
-	int moveInc;
-
-	// 2/18/25 Use isolated move count
-
-//	System.out.print("createInputs isolated moves input " + i + " avg " + avg + " lastRow " + lastRow + " isolatedMoves " + isolatedMoves);
-//	System.out.println();
+      }
+   }
 
-         if (isolatedMoves != 0)
-            stepSize = (max - min) / isolatedMoves;
-         else
-            stepSize = max - min;
-         double mvLag = Double.parseDouble(input.get(7, i));
+   /*
+    * free: Method that releases the storage of the dataset once it has been written or streamed
+    */
+   private void free(){
+      data.free();
+      if (cycle != null)
+         cycle.free();
+   }
 
-         double filter;
-         double mvFilter;
-         if (mvLag <= 0)
-            filter = 1;
+
+   /*
+    * plan: Method that works out the size of the dataset from the configurations, without generating it
+    * The move schedule rows come from the same schedule that createInputs writes
+    */
+   public Plan plan(){
+      Plan plan = new Plan();
+      MoveSchedule schedule = schedule();
+      schedule.addPhases(plan);
+      plan.cycleRows = schedule.lastRow - Dataset.FIRST_ROW + 1;
+      plan.rows = continuous > 0 ? totalRows : windowLast > 0 ? windowLast - firstRow + 1 : plan.cycleRows;
+      // A window is written from its first row, after the warm-up rows that are calculated before it
+      if (windowLast > 0){
+         plan.firstRow = firstRow;
+         plan.warmupRows = firstRow - calcFirst;
+      }
+      plan.period = processPeriod;
+      plan.inputs = needed(2, numInputs + 1);
+      plan.states = needed(numInputs + 2, lastInputCol);
+      plan.outputs = needed(lastInputCol + 1, lastInputCol + numOutputs);
+      plan.threads = continuous > 0 ? 1 : threads;
+      // The state blocks of the task graph run at the same time, but the QCS and each lab output run through the blocks in order on a thread at a time,
+      // and in continuous mode each stage has a thread of its own, with the writing stage counted with the formatting
+      if (continuous == 0 && threads > 1 && !formulas.inOrder(new ArrayList<>(labOutputs.keySet())))
+         plan.calcThreads = Math.min(threads, plan.outputs + 1);
+      else if (pipelined())
+         plan.calcThreads = Math.min(threads, PIPELINE_STAGES - 1);
+      plan.storage = data.storage();
+
+      // Each value is written with about as many characters as the digits it keeps
+      int chars = digits > 0 ? digits + 1 : data.isSingle() ? 9 : 17;
+      int bytes = data.isSingle() ? 4 : 8;
+      // Rows are stored in blocks that double in size, so the storage is the next doubling above the last row calculated
+      long capacity = 1024;
+      while (capacity < (calcLast > 0 ? calcLast : schedule.lastRow) - Dataset.FIRST_ROW + 1)
+         capacity = capacity * 2;
+      // In continuous mode only the recent rows are kept, along with the move schedule when it is repeated
+      long stored = continuous > 0 ? windowRows() : capacity;
+      long heap = continuous == 1 ? capacity * numInputs * bytes : 0;
+      int written = 0;
+      plan.bytesPerRow = arrow ? Long.BYTES : longFormat ? 0 : "MM/dd/yy HH:mm:ss".length() + 2;
+      for (int col = 2; col <= data.columns(); col++){
+         int period = data.period(col);
+         // Columns only keep their sample rows once they are compacted, inputs are compacted after the move schedule is made
+         heap += (col > numInputs + 1 && data.isCompact(col) ? stored / period + 1 : stored) * bytes;
+         // Only the written columns add to the output
+         if (!data.isWritten(col))
+            continue;
+         plan.addColumn(period * processPeriod);
+         written++;
+         plan.valuesPerRow += 1.0 / period;
+         // Arrow files hold every row of a column, with a validity bit for each row when the column is sampled
+         if (arrow)
+            plan.bytesPerRow += bytes + (period > 1 ? 1.0 / 8 : 0);
+         // The long format only has a line for each sample, with the TIME and the name on every line
+         else if (longFormat)
+            plan.bytesPerRow += ("MM/dd/yy HH:mm:ss".length() + data.name(col).length() + chars + 4.0) / period;
          else
-            filter = 0.63 / (mvLag / (rowsPerProcess * processPeriod));
-         if (filter > 1)
-            mvFilter = 1;
+            plan.bytesPerRow += 1 + (double) chars / period;
+      }
+      plan.heapBytes = heap;
+      // The statistics file has a row for each interval, with a value for each statistic of each written column
+      if (aggregateSeconds > 0){
+         plan.aggregateSeconds = aggregateSeconds;
+         plan.aggregateBytesPerRow = "MM/dd/yy HH:mm:ss".length() + 2 + written * aggregateStats.size() * (chars + 1);
+         if (aggregateOnly)
+            plan.bytesPerRow = 0;
+      }
+
+      long rows = plan.rows;
+      if (rows > 0){
+         if (rollRows > 0)
+            plan.files = Math.max(plan.files, (rows + rollRows - 1) / rollRows);
+         if (rollBytes > 0)
+            plan.files = Math.max(plan.files, (long) Math.ceil(rows * plan.bytesPerRow / rollBytes));
+         if (rollHours > 0)
+            plan.files = Math.max(plan.files, (long) Math.ceil(rows * processPeriod / (rollHours * 3600)));
+      }
+      return plan;
+   }
+   /*
+    * stream: Method that sends the final dataset to a historian stream, one row at a time at the TIME of each row
+    */
+   public void stream(HistorianStream historian) throws IOException {
+      // In the long format the lines of each row are sent together at its TIME
+      RowFormatter formatter = new RowFormatter(data, startDate, processPeriod, digits, longFormat);
+      try {
+         if (continuous > 0)
+            historian.run(formatter, firstRow, lastRow(), processPeriod, this::nextRow);
          else
-            mvFilter = filter;
-
-	// Start from last uncoupled row
-         double noise = Double.parseDouble(input.get(6, i));
-         double lastMove = min;
-	// 2/18/25 Use isolatedMoves
-
-        for (int inputCount = 2; inputCount <= lastInCol; inputCount++) 
-	{
-         	for (int j = 0; j <= isolatedMoves; j++) 
-		{
-			if (order == inputCount) 
-                   		move = min + stepSize * j;
-                	else
-                  		move = avg;
-
-			System.out.flush();
-
-			moveInc = (int) Math.round(rowsPerMove / rowsPerProcess);
-
-//			System.out.println("createInputs isolated moves rowsPerMove " + rowsPerMove);
-//			System.out.println("createInputs isolated moves rowsPerProcess " + rowsPerProcess);
-//			System.out.println("createInputs isolated moves moveInc " + moveInc);
-//			System.out.println("createInputs isolated moves input " + i + " avg " + avg + " lastRow " + lastRow + " isolated move j " + j + " moveInc " + moveInc);
-
-           
-               		for (int x = 1; x <= moveInc; x++) 
-		  	{
-                  		row = lastRow + x + j * moveInc + (inputCount-2)*isolatedMoves*moveInc;
-
-//System.out.println("createInputs isolated moves input " + i + " inputCount " + inputCount + " move " + move + " lastRow " + lastRow + " isolated move j " + j + " row x " + x + " row " + row);
+            historian.run(formatter, firstRow, windowEnd(), processPeriod, row -> checkCancelled());
+      }
+      finally {
+         free();
+      }
+   }
 
-                  		double noiseVal = calcNoise(noise);
-//				System.out.println("createInputs isolated moves noiseVal ");
-                  		double sineVal = calcSine(sinePeriod, amplitude, row);
-//				System.out.println("createInputs isolated moves sineVal ");
-
-//				System.out.println("createInputs isolated moves set priorval row " + row + " input i " + i);
-                  		priorVal = Double.parseDouble(data.get(row-1, i));
-//				System.out.println("createInputs isolated moves priorVal " + priorVal);
-                  		double newVal = priorVal * (1 - mvFilter) + move * mvFilter;
-//				System.out.println("createInputs isolated moves newVal " + newVal);
-                  		if (newVal < min)
-                     			newVal = min;
-                  		else if (newVal > max)
-                     			newVal = max;
-
-//				System.out.println("createInputs isolated moves before data.put input " + i + " inputCount " + inputCount + " moveInc " + moveInc + " newVal " + newVal + " lastRow " + lastRow + " isolated move j " + j + " row x " + x + " row " + row);
 
-                  		data.put(row, i, String.valueOf((newVal + noiseVal + sineVal)));
-
-//				System.out.println("createInputs isolated moves input " + i + " newVal " + newVal + " lastRow " + lastRow + " isolated move j " + j + " row x " + x + " row " + row);
-               	  	}
-		}
+   /*
+    * createInputs: Method that creates the input variable data
+    * Determines the number of rows to represent each move, it needs to be the longer of the MV settling time or the lab sample period
+    */
+   public void createInputs(){
+      createInputs(data);
+   }
 
-//		System.out.print("createInputs isolated moves after data.put input " + i + " lastRow " + lastRow + " row " + row);
-//		System.out.println();
+   /*
+    * createInputs: Method that creates the input variable data in a given dataset, the dataset itself or the move schedule of continuous mode
+    * Each input is written from the move schedule in one pass over its rows
+    */
+   private void createInputs(Dataset data){
+      MoveSchedule schedule = schedule();
+      long first = draws;
+      // A window only needs the inputs from the first row calculated to the last, written from the segment they start in
+      int start = schedule.start(calcFirst);
+      int last = calcLast > 0 ? calcLast : schedule.lastRow;
+      // Each input draws its own range of random numbers, so the inputs that are not needed are left out without changing the others
+      for (int col = 2; col <= numInputs + 1; col++){
+         checkCancelled();
+         if (needs(col))
+            createInput(data, schedule, col, first, start, last);
+      }
+      draws = first + schedule.draws;
+      lastSteadyStateRow = schedule.lastSteadyStateRow;
+      finalRow = schedule.lastRow;
 
-	}
-//        	lastRow = row;
-      }
-	lastRow = row;
-      	lastInRow = lastRow;
-
-	System.out.println("createInputs isolated moves complete lastRow " + lastRow + " lastInRow " + lastInRow);
-
-	// End of isolated moves
-
-      // Set all inputs to average for settling time
-      for (int i = 2; i < lastInCol; i++) {
-         double min = Double.parseDouble(input.get(9, i));
-         double max = Double.parseDouble(input.get(8, i));
-         double avg = min + (max - min) / 2;
-         double noise = Double.parseDouble(input.get(6, i));
-         double sinePeriod = Double.parseDouble(input.get(10, i));
-         double amplitude = Double.parseDouble(input.get(11, i));
-
-//	System.out.println("createInputs settle 2 input " + i + " avg " + avg + "  lastRow " + lastRow);
-//	System.out.println();
-
-	// 2/18/25 use lastInRow
-         for (int j = 1; j <= (rowsPerMove / rowsPerProcess); j++) {
-            double noiseVal = calcNoise(noise);
-            row = lastRow - 1 + rowsPerProcess * j;
-            double sineVal = calcSine(sinePeriod, amplitude, row);
-            data.put(row, i, String.valueOf((avg + noiseVal + sineVal)));
-         }
-
-//	System.out.println("createInputs settle 2 input " + i + " avg " + avg + " lastRow " + lastRow + " row " + row);
-//	System.out.println();
-      }
-         lastRow = row;
-      lastInRow = lastRow;
-      lastSteadyStateRow = lastRow;
-
-	System.out.println("createInputs settle 2 complete lastRow " + lastRow + " lastSteadyStateRow " + lastSteadyStateRow);
-
-      // Validation move rows
-      int firstValidationRow = 13;
-      int lastValidationRow = 13 + coupledMoves;
-      int dataRow = 0;
-	System.out.println("Validation coupledMoves " + coupledMoves +  " rowsPerMove " + rowsPerMove);
-      for (int i = firstValidationRow; i <= lastValidationRow; i++) {
-         for (int j = 2; j < lastInCol; j++) {
-            double validationValue;
-            double noise = Double.parseDouble(input.get(6, j));
-            double sinePeriod = Double.parseDouble(input.get(10, j));
-            double amplitude = Double.parseDouble(input.get(11, j));
-            if (input.get(i, j) == null || input.get(i, j).equals(""))
-               validationValue = Double.parseDouble(data.get(lastInRow, j));
-            else
-               validationValue = Double.parseDouble(input.get(i, j));
-// 2/25/25 re-fixed for lastInRow
-            for (dataRow = lastInRow + 1; dataRow <= (lastInRow + rowsPerMove); dataRow++) 
-		{
-               double noiseVal = calcNoise(noise);
-               double sineVal = calcSine(sinePeriod, amplitude, dataRow);
-               data.put(dataRow, j, String.valueOf((validationValue + noiseVal + sineVal)));
-            }
-	System.out.println("Validation coupledMoves dataRow " + dataRow + " j " + j + " lastInCol " + lastInCol);
-         }
-         lastInRow = dataRow - 1;
-
-	System.out.println("Validation coupledMoves dataRow " + dataRow + " lastInRow " + lastInRow + " i " + i);
-      }
-      finalRow = lastInRow;
-	System.out.println("Validation coupledMoves dataRow " + dataRow + " lastInRow " + lastInRow + " finalRow " + finalRow);
-      // Empty values are required for the CSV to skip values accurately
-      for (int i = 3; i <= finalRow; i++){
-         data.put(i, 1, "");
-      }
-
-      // List is used to note essentail variables
-      List<Integer> inputNames = new ArrayList<>();
-      calcList(inputNames, numInputs, input);
-      // Input variables that are required in QCS variable calculations are added
-      inputNames.add(searchCol("MV_ThinStockFlow", input));
-      inputNames.add(searchCol("MV_ThinStockConsistency", input));
-      inputNames.add(searchCol("MV_PressLoad", input));
-      inputNames.add(searchCol("MV_SteamPressure", input));
-      /*
-       * Below code was adapted from this website: https://www.freecodecamp.org/news/how-to-sort-a-list-in-java/
-       */
-      Collections.sort(inputNames);
-      // End of code reference
-      // The first essential input variable column is recorded, so the rest don't have to be written
-      firstVal = inputNames.get(0);
-      write(false, "data");
+      // In continuous mode the move schedule is created again for every cycle, so its columns must keep every row
+      for (int col = 2; col <= numInputs + 1; col++){
+         if (!everyRow[col] && continuous == 0)
+            data.compact(col);
+      }
    }
 
    /*
-    * stateSetup: Method for calculating a given state column given its input column and state table column
+    * schedule: Method that returns the move schedule, worked out the first time it is needed
     */
-   private void stateSetup(int col, int inCol, int stateCol){
-      // Since the state calculations were specific, the values could be hard-coded
-      double intercept = 1000;
-      double asymptote = 300;
-      double slope = 0.5;
-      double noise = Double.parseDouble(state.get(6, col));
-      for (int i = 3; i <= finalRow; i++){
-         double noiseVal = calcNoise(noise);
-         double inputVal = Double.parseDouble(data.get(i, inCol));
-         double val = intercept - (intercept - asymptote) * (1 - 1 / Math.exp(slope * inputVal)) + noiseVal;
-         data.put(i, stateCol, String.valueOf(val));
+   public MoveSchedule schedule(){
+      if (schedule == null)
+         schedule = new MoveSchedule(input, numInputs, inputSettle / processPeriod, uncoupledMoves, isolatedMoves, coupledMoves);
+      return schedule;
+   }
+
+   // createInput: Method for writing a given input column from the segments of the move schedule, given the count of random numbers drawn before the schedule,
+   // the first segment written and the last row
+   private void createInput(Dataset data, MoveSchedule schedule, int col, long first, int start, int lastRow){
+      int index = col - 2;
+      double min = Double.parseDouble(input.get(9, col));
+      double max = Double.parseDouble(input.get(8, col));
+      double noise = Double.parseDouble(input.get(6, col));
+      double mvLag = Double.parseDouble(input.get(7, col));
+      double sinePeriod = Double.parseDouble(input.get(10, col));
+      double amplitude = Double.parseDouble(input.get(11, col));
+      double mvFilter = mvLag <= 0 ? 1 : Math.min(0.63 / (mvLag / processPeriod), 1);
+      boolean single = data.isSingle();
+
+      for (MoveSchedule.Segment segment : schedule.segments.subList(start, schedule.segments.size())){
+         long draw = first + segment.draw + index * segment.stride;
+         // The row before a segment is read once, a segment that writes over an earlier one starts from what is there now
+         double prior = data.get(segment.first - 1, col);
+         double value = segment.values[index];
+         if (Double.isNaN(value))
+            value = prior;
+         int last = Math.min(segment.first + segment.rows - 1, lastRow);
+         for (int row = segment.first; row <= last; row++){
+            double noiseVal = 2 * random(seed, ++draw) * noise - noise;
+            double sineVal = calcSine(sinePeriod, amplitude, row);
+            if (segment.move){
+               double newVal = prior * (1 - mvFilter) + value * mvFilter;
+               if (newVal < min)
+                  newVal = min;
+               else if (newVal > max)
+                  newVal = max;
+               prior = newVal + noiseVal + sineVal;
+               // The next row filters from the value as it is stored
+               if (single)
+                  prior = (float) prior;
+               data.set(row, col, prior);
+            }
+            else
+               data.set(row, col, value + noiseVal + sineVal);
+         }
       }
    }
 
@@ -579,95 +957,69 @@ public class Generator {
     */
    public void calcState(){
 	System.out.println("calcState");
-      stateSetup(searchCol("MV_SWFreeness", state), searchCol("MV_SWSpecificEnergy", data), searchCol("MV_SWFreeness", data));
-      stateSetup(searchCol("MV_HWFreeness", state), searchCol("MV_HWSpecificEnergy", data), searchCol("MV_HWFreeness", data));
-      stateSetup(searchCol("MV_OCCFreeness", state), searchCol("MV_OCCSpecificEnergy", data), searchCol("MV_OCCFreeness", data));
-      for (int i = 3; i <= finalRow; i++){
-         double wireSpeed = Double.parseDouble(data.get(i, searchCol("MV_WireSpeed", data)));
-         if (wireSpeed <= 1){
-            data.put(i, searchCol("MV_HeadboxPressure", data), "0");
-            data.put(i, searchCol("MV_SliceOpening", data), "0.2");
-            data.put(i, searchCol("MV_MachineSpeed", data), "0");
-         }
-         else {
-            double jetVelocity = Double.parseDouble(data.get(i, searchCol("MV_JettoWire", data))) * wireSpeed;
-            data.put(i, searchCol("MV_HeadboxPressure", data), String.valueOf(Math.pow(jetVelocity, 2) / (2 * 115920)));
-            double sliceOpening = Double.parseDouble(data.get(i, searchCol("MV_ThinStockFlow", data))) * 12 / (7.48 * jetVelocity * trim);
-            data.put(i, searchCol("MV_SliceOpening", data), String.valueOf(sliceOpening));
-            data.put(i, searchCol("MV_MachineSpeed", data), String.valueOf(wireSpeed * draw));
-         }
-
-         double swFlow = Double.parseDouble(data.get(i, searchCol("MV_SWFlow", data)));
-         double hwFlow = Double.parseDouble(data.get(i, searchCol("MV_HWFlow", data)));
-         double occFlow = Double.parseDouble(data.get(i, searchCol("MV_OCCFlow", data)));
-         double swCrill = Double.parseDouble(data.get(i, searchCol("PulpEye_SWCrill", data)));
-         double hwCrill = Double.parseDouble(data.get(i, searchCol("PulpEye_HWCrill", data)));
-         double occCrill = Double.parseDouble(data.get(i, searchCol("PulpEye_OCCCrill", data)));
-         double totalFlow = swFlow + hwFlow + occFlow;
-         double swFreeness = Double.parseDouble(data.get(i, searchCol("MV_SWFreeness", data)));
-         double hwFreeness = Double.parseDouble(data.get(i, searchCol("MV_HWFreeness", data)));
-         double occFreeness = Double.parseDouble(data.get(i, searchCol("MV_OCCFreeness", data)));
-         if (totalFlow <= 100){
-            data.put(i, searchCol("MV_SWPct", data), "0");
-            data.put(i, searchCol("MV_HWPct", data), "0");
-            data.put(i, searchCol("MV_OCCPct", data), "0");
-            data.put(i, searchCol("PulpEye_BlendFreeness", data), "0");
-            data.put(i, searchCol("PulpEye_BlendCrill", data), "0");
-         }
-         else {
-            data.put(i, searchCol("MV_SWPct", data), String.valueOf(100 * swFlow / totalFlow));
-            data.put(i, searchCol("MV_HWPct", data), String.valueOf(100 * hwFlow / totalFlow));
-            data.put(i, searchCol("MV_OCCPct", data), String.valueOf(100 * occFlow / totalFlow));
-            data.put(i, searchCol("PulpEye_BlendFreeness", data), String.valueOf((swFreeness * swFlow + hwFreeness * hwFlow + occFreeness * occFlow) / totalFlow));
-            data.put(i, searchCol("PulpEye_BlendCrill", data), String.valueOf((swCrill * swFlow + hwCrill * hwFlow + occCrill * occFlow) / totalFlow));
-         }
+      for (int i = calcFirst; i <= calcEnd(); i++){
+         checkCancelled();
+         stateRow(i);
       }
    }
 
    /*
-    * dynamicValues: Method that calculates a dynamically moved input or state value for a given row and column
-    * These values are stored in a separate table ('dyn') so the original values can still be accessed from the 'data' table
+    * stateRow: Method that calculates the state formulas of a given row
     */
-   private void dynamicValues(int row, int col, boolean isInput){
-      // Table is assigned based on if the variable is an input or state variable
-      Table<Integer, Integer, String> table;
-      if (isInput)
-         table = input;
-      else
-         table = state;
-      int deadTime = (int) (Double.parseDouble(table.get(3, col)) * 60 / processPeriod);
-      double lag1 = Double.parseDouble(table.get(4, col));
-      double lag2 = Double.parseDouble(table.get(5, col));
-      if (!isInput)
-         col = col + numInputs;
+   private void stateRow(int i){
+      formulas.state.run(i, true);
+   }
+
+   /*
+    * setFilters: Method that works out the dead time and lag filters of each input and state variable from the configurations, once for every row
+    */
+   private void setFilters(){
+      deadTimes = new int[lastInputCol + 1];
+      lag1Filters = new double[lastInputCol + 1];
+      lag2Filters = new double[lastInputCol + 1];
+      for (int col = 2; col <= lastInputCol; col++){
+         // Table is assigned based on if the variable is an input or state variable
+         Table<Integer, Integer, String> table = col <= numInputs + 1 ? input : state;
+         int tableCol = col <= numInputs + 1 ? col : col - numInputs;
+         deadTimes[col] = (int) (Double.parseDouble(table.get(3, tableCol)) * 60 / processPeriod);
+         lag1Filters[col] = filter(Double.parseDouble(table.get(4, tableCol)));
+         lag2Filters[col] = filter(Double.parseDouble(table.get(5, tableCol)));
+      }
+   }
 
+   // filter: Method for the filter of a given lag in minutes, 1 for no lag
+   private double filter(double lag){
       double filterVal;
-      if (lag1 <= 0)
+      if (lag <= 0)
          filterVal = 1;
       else
-         filterVal = 0.63 / (lag1 * 60 / processPeriod);
-      if (filterVal > 1)
-         lag1 = 1;
-      else
-         lag1 = filterVal;
-      if (lag2 <= 0)
-         filterVal = 1;
-      else
-         filterVal = 0.63 / (lag2 * 60 / processPeriod);
-      if (filterVal > 1)
-         lag2 = 1;
-      else
-         lag2 = filterVal;
+         filterVal = 0.63 / (lag * 60 / processPeriod);
+      return filterVal > 1 ? 1 : filterVal;
+   }
 
-      double inputDeadtime = Double.parseDouble(data.get(row - deadTime, col));
+   /*
+    * dynamicValues: Method that calculates a dynamically moved input or state value for a given row and column
+    * These values are stored separately ('dyn') so the original values can still be accessed from the 'data' table
+    */
+   private void dynamicValues(int row, int col, boolean isInput, Dynamics dyn){
+      if (!isInput)
+         col = col + numInputs;
+      // A column can be moved by both the QCS and lab calculations, so it is only calculated once for each row
+      if (dyn.at[col] == row)
+         return;
+      int deadTime = deadTimes[col];
+      double lag1 = lag1Filters[col];
+      double lag2 = lag2Filters[col];
+
+      double inputDeadtime = data.get(row - deadTime, col);
       double inLag1;
       double inLag2;
       if (row == dynRow + 1) {
-         inLag1 = Double.parseDouble(data.get(row - deadTime - 1, col));
-         inLag2 = Double.parseDouble(data.get(row - deadTime - 2, col));
+         inLag1 = data.get(row - deadTime - 1, col);
+         inLag2 = data.get(row - deadTime - 2, col);
       } else {
-         inLag1 = Double.parseDouble(dyn.get(3, col));
-         inLag2 = Double.parseDouble(dyn.get(4, col));
+         inLag1 = dyn.result[col];
+         inLag2 = dyn.prior[col];
       }
       double result;
       if (lag2 <= 0)
@@ -675,9 +1027,9 @@ public class Generator {
       else {
          result = secondOrder(inputDeadtime, inLag1, inLag2, lag1, lag2);
       }
-      dyn.put(2, col, String.valueOf(inputDeadtime));
-      dyn.put(3, col, String.valueOf(result));
-      dyn.put(4, col, String.valueOf(inLag1));
+      dyn.result[col] = result;
+      dyn.prior[col] = inLag1;
+      dyn.at[col] = row;
    }
 
    /*
@@ -694,80 +1046,31 @@ public class Generator {
     */
    public void calcQCS(){
 	System.out.println("calcQCS");
-      // The input variables not required for the remaining methods have been written to a CSV file, therefore those input columns were cleared
-      for (int i = 2; i < firstVal; i++){
-         for (int j = 3; j < finalRow + 1; j++){
-            data.put(j, i, "");
-         }
+      for (int i = calcFirst; i <= calcEnd(); i++){
+         checkCancelled();
+         qcsRow(i);
       }
+   }
 
-      int col = searchCol("QCS_Caliper", state);
-      double caliperMax = Double.parseDouble(state.get(7,col));
-      double caliperSlope = 0.02;
-      double caliperNoise = Double.parseDouble(state.get(6,col));
-      for (int i = 3; i <= finalRow; i++){
-         double thinStockFlow;
-         double thinStockConsistency;
-         double pressLoad;
-         double steamPressure;
-         double machineSpeed;
-         double blendFreeness;
-	// 3/3/24 was not declared
-	 String blendFreeness_str;
-
-         if (i > dynRow) {
-            dynamicValues(i, searchCol("MV_ThinStockFlow", input), true);
-            dynamicValues(i, searchCol("MV_ThinStockConsistency", input), true);
-            dynamicValues(i, searchCol("MV_PressLoad", input), true);
-            dynamicValues(i, searchCol("MV_SteamPressure", input), true);
-            dynamicValues(i, searchCol("MV_MachineSpeed", state), false);
-            dynamicValues(i, searchCol("PulpEye_BlendFreeness", state), false);
-            thinStockFlow = Double.parseDouble(dyn.get(3, searchCol("MV_ThinStockFlow", dyn)));
-            thinStockConsistency = Double.parseDouble(dyn.get(3, searchCol("MV_ThinStockConsistency", dyn)));
-            pressLoad = Double.parseDouble(dyn.get(3, searchCol("MV_PressLoad", dyn)));
-            steamPressure = Double.parseDouble(dyn.get(3, searchCol("MV_SteamPressure", dyn)));
-            machineSpeed = Double.parseDouble(dyn.get(3, searchCol("MV_MachineSpeed", dyn)));
-            blendFreeness = Double.parseDouble(dyn.get(3, searchCol("PulpEye_BlendFreeness", dyn)));
-         }
-         else{
-            thinStockFlow = Double.parseDouble(data.get(i, searchCol("MV_ThinStockFlow", data)));
-            thinStockConsistency = Double.parseDouble(data.get(i, searchCol("MV_ThinStockConsistency", data)));
-            pressLoad = Double.parseDouble(data.get(i, searchCol("MV_PressLoad", data)));
-            steamPressure = Double.parseDouble(data.get(i, searchCol("MV_SteamPressure", data)));
-            machineSpeed = Double.parseDouble(data.get(i, searchCol("MV_MachineSpeed", data)));
-		// 11/29/23 if freeness blank set to 0
-		blendFreeness_str =data.get(i, searchCol("PulpEye_BlendFreeness", data));
-		if (blendFreeness_str == "")	
-		{
-		blendFreeness = 0;
-		}	
-		else
-		{
-            	blendFreeness = Double.parseDouble(blendFreeness_str);
-		}
-         }
+   /*
+    * qcsRow: Method that calculates the QCS formulas of a given row
+    * The lag() values are still calculated on every row, since each row depends on the row before
+    */
+   private void qcsRow(int i){
+      formulas.qcs.run(i, qcsAllRows);
+   }
 
-         double boneDryWeight;
-         double fiberToHeadbox = thinStockFlow * thinStockConsistency * 8.3 / 100;
-         double waterToHeadbox = thinStockFlow * 8.3 - fiberToHeadbox;
-         double wireDrainage = 5 + 90 * (1 - 1 / Math.exp(blendFreeness));
-         double waterToPress = waterToHeadbox * wireDrainage / 100;
-         double pressDrainage = 80 * (1 - 1 / Math.exp(pressLoad / 200));
-         double waterToDryers = waterToPress * pressDrainage / 100;
-         double moistureToDryers = waterToDryers / fiberToHeadbox;
-         double moistureAsymptote = 2.5 + machineSpeed / 500;
-         data.put(i, searchCol("QCS_Moisture", data), String.valueOf(moistureAsymptote + (moistureToDryers - moistureAsymptote) / Math.exp(steamPressure / 25)));
-         if (machineSpeed <= 1)
-            boneDryWeight = 0;
-         else
-            boneDryWeight = fiberToHeadbox * 3300 / (machineSpeed * trim);
-         data.put(i, searchCol("QCS_BoneDryWeight", data), String.valueOf(boneDryWeight));
-         data.put(i, searchCol("QCS_BasisWeight", data), String.valueOf(boneDryWeight * (1 + Double.parseDouble(data.get(i, searchCol("QCS_Moisture", data))) / 100)));
-         double capMaxCalc = caliperMax * boneDryWeight / 50;
-         double capMinCalc = capMaxCalc / 2;
-         double noise = calcNoise(caliperNoise);
-         data.put(i, searchCol("QCS_Caliper", data), String.valueOf(capMinCalc + (capMaxCalc - capMinCalc) / Math.exp((pressLoad - 700) * caliperSlope) + noise));
+   /*
+    * lag: Method that returns the dynamically moved value of a given input or state table column for a given row, read by the formulas' lag()
+    * Before the dynamics start the value is read from the 'data' table, with a blank value read as 0
+    */
+   private double lag(int row, int col, boolean isInput){
+      if (row > dynRow){
+         dynamicValues(row, col, isInput, dynamics);
+         return dynamics.result[isInput ? col : col + numInputs];
       }
+      double value = data.get(row, isInput ? col : col + numInputs);
+      return Double.isNaN(value) ? 0 : value;
    }
 
    /*
@@ -775,55 +1078,227 @@ public class Generator {
     */
    public void calcLab(){
        System.out.println("Starting calcLab...");
-      List<Integer> inputNames = new ArrayList<>();
-      calcList(inputNames, numInputs, input);
-//	System.out.println("calcLab Finished inputnames ...");
-
-      List<Integer> stateNames = new ArrayList<>();
-      calcList(stateNames, numState, state);
-//	System.out.println("calcLab Finished statenames ...");
+      // Since temporary dynamic values are being used, the method must go through every row so the dynamics can be calculated cumulatively
+      for (int j = calcFirst; j <= calcEnd(); j ++){
+         checkCancelled();
+         labRow(j, dynamics);
+      }
+   }
 
-      int lastLab = lastInputCol + numOutputs;
-      int firstLab = lastInputCol + 1;
+   /*
+    * labRow: Method that calculates the output variables of a given row, each output only has a value on its sample rows
+    */
+   private void labRow(int j, Dynamics dyn){
       int stateRow = numInputs + 2;
-      // Since temporary dynamic values are being used, the method must go through every row so the dynamics can be calculated cumulatively
-      labPeriod = labPeriod / processPeriod;
-      for (int i = firstLab; i < lastLab + 1; i++){
-//	System.out.println("calcLab lab values i " + i + " firstlab " + firstLab + " lastlab " + lastLab);
-         String name = data.get(1, i);
-         int numRows = labPeriod;
-         for (int j = 3; j <= finalRow; j ++){
-//		System.out.println("calcLab lab values i " + i + " firstlab " + firstLab + " lastlab " + lastLab + " finalRow " + finalRow + " j " + j);
+      if (j > dynRow) {
+         for (int input : labInputs) {
+            dynamicValues(j, input, true, dyn);
+         }
+         for (int state : labStates) {
+            dynamicValues(j, state, false, dyn);
+         }
+      }
+      for (int i = lastInputCol + 1; i <= lastInputCol + numOutputs; i++){
+         if (!data.isSample(j, i))
+            continue;
+         if (needs(i))
+            data.set(j, i, gainModel(data.name(i), stateRow, j, dyn));
+         // An output that is not needed still draws its noise value, so the outputs after it draw the same random numbers
+         else
+            calcNoise(0);
+      }
+   }
+
+   /*
+    * calcVariables: Method that calculates the state, QCS and lab variables as a graph of tasks over blocks of rows, run on a work-stealing pool
+    * The state blocks only read the inputs, so they all run at once. The QCS and each lab output carry their dynamics from one block to the next,
+    * and a lab output that reads state variables waits for the QCS of the same block, so the lab outputs of a block run while the QCS moves on.
+    * Each task draws the random numbers it would draw with the rows in order, so the dataset is the same as calcState, calcQCS and calcLab,
+    * which are used instead when the formulas cannot be split into blocks (see Formulas.inOrder)
+    */
+   public void calcVariables(){
+      if (threads == 1 || formulas.inOrder(new ArrayList<>(labOutputs.keySet()))){
+         // A window starts each of them from the random numbers they draw before its first row calculated
+         long[] start = calcFirst > Dataset.FIRST_ROW || calcLast > 0 ? sectionDraws(calcFirst) : null;
+         if (start != null)
+            draws = start[0];
+         calcState();
+         if (start != null)
+            draws = start[1];
+         calcQCS();
+         if (start != null)
+            draws = start[2];
+         calcLab();
+         if (start != null)
+            draws = start[3];
+         return;
+      }
+      int blocks = (calcEnd() - calcFirst) / BLOCK_ROWS + 1;
+      int stateNoises = formulas.state.noises();
+      int qcsNoises = formulas.qcs.noises();
+      // The count of random numbers drawn before each block, the state draws on every row, the QCS on its rows and each lab output on its sample rows
+      long stateDraws = draws;
+      long[] start = sectionDraws(calcFirst);
+      long[] qcsDraws = new long[blocks + 1];
+      long[] labDraws = new long[blocks + 1];
+      qcsDraws[0] = start[1];
+      for (int k = 0; k < blocks; k++){
+         long rows = 0;
+         for (int row = blockFirst(k); row <= blockLast(k); row++){
+            if (formulas.qcs.calculates(row, qcsAllRows))
+               rows++;
+         }
+         qcsDraws[k + 1] = qcsDraws[k] + rows * qcsNoises;
+      }
+      labDraws[0] = start[2];
+      for (int k = 0; k < blocks; k++){
+         long samples = 0;
+         for (int row = blockFirst(k); row <= blockLast(k); row++){
+            for (int col = lastInputCol + 1; col <= lastInputCol + numOutputs; col++){
+               if (data.isSample(row, col))
+                  samples++;
+            }
+         }
+         labDraws[k + 1] = labDraws[k] + samples;
+      }
+
+      TaskGraph graph = new TaskGraph(threads);
+      // The state blocks run at the same time, so each thread has its own copy of the state formulas for the values of their 'let' names
+      ThreadLocal<Formulas.Section> stateFormulas = ThreadLocal.withInitial(formulas.state::copy);
+      int[] qcs = new int[blocks];
+      for (int k = 0; k < blocks; k++){
+         int first = blockFirst(k);
+         int last = blockLast(k);
+         long draw = stateDraws + (long) (first - 3) * stateNoises;
+         int stateTask = graph.add(() -> {
+            Formulas.Section section = stateFormulas.get();
+            block(i -> section.run(i, true), first, last, draw);
+         });
+         long qcsDraw = qcsDraws[k];
+         qcs[k] = k == 0 ? graph.add(() -> block(this::qcsRow, first, last, qcsDraw), stateTask)
+                         : graph.add(() -> block(this::qcsRow, first, last, qcsDraw), stateTask, qcs[k - 1]);
+      }
+      // Each lab output has its own dynamics, and only moves the variables it reads
+      for (int col = lastInputCol + 1; col <= lastInputCol + numOutputs; col++){
+         if (!needs(col))
+            continue;
+         int labCol = col;
+         List<Integer> inputs = new ArrayList<>();
+         labList(data.name(col), inputs, numInputs, input);
+         List<Integer> states = new ArrayList<>();
+         labList(data.name(col), states, numState, state);
+         Dynamics dyn = new Dynamics(lastInputCol + 2);
+         int lab = -1;
+         for (int k = 0; k < blocks; k++){
+            int first = blockFirst(k);
+            int last = blockLast(k);
+            long draw = labDraws[k];
+            Runnable task = () -> labBlock(labCol, inputs, states, dyn, first, last, draw);
+            if (states.isEmpty())
+               lab = lab < 0 ? graph.add(task) : graph.add(task, lab);
+            else
+               lab = lab < 0 ? graph.add(task, qcs[k]) : graph.add(task, qcs[k], lab);
+         }
+      }
+      graph.run();
+      draws = start[3];
+   }
+
+   /*
+    * sectionDraws: Method that returns the counts of random numbers drawn before the state, QCS and lab variables of a given row, and after all of them
+    * The state formulas draw on every row of the move schedule, then the QCS formulas on the rows they calculate and then each lab output on its sample rows
+    */
+   private long[] sectionDraws(int row){
+      int qcsNoises = formulas.qcs.noises();
+      long qcsBefore = 0;
+      long qcsAll = 0;
+      long labBefore = 0;
+      long labAll = 0;
+      for (int i = Dataset.FIRST_ROW; i <= finalRow; i++){
+         if (i == row){
+            qcsBefore = qcsAll;
+            labBefore = labAll;
+         }
+         qcsAll += qcsDraws(i, qcsNoises);
+         labAll += labSamples(i);
+      }
+      long qcsFirst = draws + (long) (finalRow - 2) * formulas.state.noises();
+      return new long[] {draws + (long) (row - 3) * formulas.state.noises(), qcsFirst + qcsBefore, qcsFirst + qcsAll + labBefore, qcsFirst + qcsAll + labAll};
+   }
+
+   // blockFirst: Method for the first row of a given block of calcVariables
+   private int blockFirst(int k){
+      return calcFirst + k * BLOCK_ROWS;
+   }
+
+   // blockLast: Method for the last row of a given block of calcVariables
+   private int blockLast(int k){
+      return Math.min(blockFirst(k) + BLOCK_ROWS - 1, calcEnd());
+   }
+
+   // calcEnd: Method for the last row calculated of a single move schedule
+   private int calcEnd(){
+      return calcLast > 0 ? calcLast : finalRow;
+   }
+
+   // windowEnd: Method for the last row written of a single move schedule
+   private int windowEnd(){
+      return windowLast > 0 ? windowLast : finalRow;
+   }
+
+   /*
+    * block: Method that calculates a block of rows with a given method for each row, starting from a given count of random numbers
+    */
+   private void block(IntConsumer rowMethod, int first, int last, long draw){
+      taskDraws.set(new long[] {draw});
+      try {
+         for (int i = first; i <= last; i++){
+            checkCancelled();
+            rowMethod.accept(i);
+         }
+      }
+      finally {
+         taskDraws.remove();
+      }
+   }
+
+   /*
+    * labBlock: Method that calculates a lab output over a block of rows, given the input and state columns it moves and its dynamics
+    * The random numbers start from a given count, and the outputs before this one that are sampled on a row draw theirs first, the same as labRow
+    */
+   private void labBlock(int col, List<Integer> inputs, List<Integer> states, Dynamics dyn, int first, int last, long draw){
+      long[] task = new long[1];
+      taskDraws.set(task);
+      try {
+         for (int j = first; j <= last; j++){
+            checkCancelled();
             if (j > dynRow) {
-               for (int input : inputNames) {
-                  dynamicValues(j, input, true);
-               }
-               for (int state : stateNames) {
-                  dynamicValues(j, state, false);
+               for (int input : inputs)
+                  dynamicValues(j, input, true, dyn);
+               for (int state : states)
+                  dynamicValues(j, state, false, dyn);
+            }
+            for (int i = lastInputCol + 1; i <= lastInputCol + numOutputs; i++){
+               if (!data.isSample(j, i))
+                  continue;
+               if (i == col){
+                  task[0] = draw;
+                  data.set(j, col, gainModel(data.name(col), numInputs + 2, j, dyn));
                }
+               draw++;
             }
-            if ((j - 3) % numRows == 0)
-	    {
-//			System.out.println("calcLab lab values i " + i + " firstlab " + firstLab + " lastlab " + lastLab + " finalRow " + finalRow + " j " + j + " staterow " + stateRow + " numRows " + numRows);
-		if ( String.valueOf(gainModel(name, stateRow, j)).isEmpty() )
-               	{	data.put(j, i, "");	
-//			System.out.println("calcLab lab values i " + i + " firstlab " + firstLab + " lastlab " + lastLab + " finalRow " + finalRow + " j " + j + " empty string");
-		}
-		else	
-		{
-//			System.out.println("calcLab lab values i " + i + " firstlab " + firstLab + " lastlab " + lastLab + " finalRow " + finalRow + " j " + j + " not empty string");
-               		data.put(j, i, String.valueOf(gainModel(name, stateRow, j)));
-		}
-	    }
          }
       }
+      finally {
+         taskDraws.remove();
+      }
    }
 
 
    /*
     * gainModel: Method that retrieves the lab configurations and calculate the final value
     */
-   private double gainModel(String name, int sRow, int row)
+   private double gainModel(String name, int sRow, int row, Dynamics dyn)
 {
       double weightedInput = 0;
       for (int i : labOutputs.get(name).rowKeySet())
@@ -867,12 +1342,12 @@ public class Generator {
          // With temporary dynamic values, the table from which the value is retrieved depends on if dynamics are required
          if (row > dynRow)
 	{
-            inVal = Double.parseDouble(dyn.get(3, searchCol(varName, dyn)));
+            inVal = dyn.result[searchCol(varName, data)];
 //		System.out.println("gainModel name " + name + " varname " + varName + " row<dynrow row " + row + " dynrow " + dynRow +" inVal " + inVal);
 	}
          else
 	{
-            inVal = Double.parseDouble(data.get(row, searchCol(varName, data)));
+            inVal = data.get(row, searchCol(varName, data));
 //		System.out.println("gainModel name " + name + " varname " + varName + " row>=dynrow row " + row + " dynrow " + dynRow +" inVal " + inVal);
 	}
 
@@ -1034,59 +1509,507 @@ public class Generator {
     * createDataset: Method that prepares the final dataset, so it is in the correct format to be written as a CSV file
     */
    public void createDataset(){
-      pulpeyePeriod = pulpeyePeriod / processPeriod;
-      qcsPeriod = qcsPeriod / processPeriod;
-      // The dataset is missing input columns which have not been read yet, so instead the columns in the below loop only go through the available data
-      for (int col = firstVal; col <= lastInputCol; col++){
-         String name = data.get(1, col);
-         int numRows;
-         if (name.contains("QCS")) {
-            numRows = qcsPeriod;
+      // Rows between the samples of the QCS, PulpEye and lab columns are left empty by the writer
+      // In continuous mode the rows are calculated as they are written, until the 'Rows' count is reached or without end if it is 0
+      /*
+       * Parts of the below code was adapted from this tutorial (under sections 3, 4, 5): https://howtodoinjava.com/java/date-time/java-localdatetime-class/#3-parsing-a-string-to-localdatetime
+       */
+      DateTimeFormatter current = DateTimeFormatter.ofPattern("MM-dd-yyyy-HH-mm-ss-SSS");
+      String time = LocalDateTime.now().format(current);
+      // End of code reference
+      // Final dataset can be written to with timings
+      write(time);
+   }
+
+   /*
+    * createDataset: Method that writes the final dataset to the data folder given its file name, without the '.csv' extension
+    */
+   public void createDataset(String name){
+      write(name);
+   }
+
+   /*
+    * file: Method that returns the file in the data folder that a dataset of a given name is written to, the manifest of its files when they are rolled
+    */
+   public String file(String name){
+      if (aggregateOnly)
+         return name + "-" + aggregateSeconds + "s.csv";
+      if (arrow)
+         return name + ".arrow";
+      if (rollRows > 0 || rollBytes > 0 || rollHours > 0)
+         return name + "-manifest.csv";
+      return name + ".csv";
+   }
+
+   /*
+    * cancel: Method that cancels the generation, it stops at the next check with a CancellationException
+    */
+   public void cancel(){
+      cancelled = true;
+   }
+
+   /*
+    * isCancelled: Method that checks if the generation has been cancelled
+    */
+   public boolean isCancelled(){
+      return cancelled;
+   }
+
+   /*
+    * checkCancelled: Method that stops the generation by throwing a CancellationException once it has been cancelled
+    * It is checked on every row and for every input of the move schedule, so a cancel takes effect within a few milliseconds
+    */
+   private void checkCancelled(){
+      if (cancelled)
+         throw new CancellationException("Generation cancelled");
+   }
+
+   /*
+    * isContinuous: Method that checks if the rows are generated in continuous mode
+    */
+   public boolean isContinuous(){
+      return continuous > 0;
+   }
+
+   /*
+    * lastRow: Method that returns the last row generated in continuous mode
+    */
+   private int lastRow(){
+      if (totalRows > 0)
+         return (int) Math.min(firstRow + totalRows - 1, Integer.MAX_VALUE);
+      return Integer.MAX_VALUE;
+   }
+
+   /*
+    * nextRow: Method that calculates every column of a given row in continuous mode
+    */
+   private void nextRow(int row){
+      checkCancelled();
+      if (continuous == 2)
+         randomInputs(row);
+      else
+         cycleInputs(row);
+      stateRow(row);
+      qcsRow(row);
+      labRow(row, dynamics);
+   }
+
+   /*
+    * pipelined: Method that checks if the rows of continuous mode are calculated with each stage on its own thread
+    * Checkpoints every few rows need every stage at the same row, and some formulas must be calculated in order (see Formulas.inOrder)
+    */
+   private boolean pipelined(){
+      return continuous > 0 && threads > 1 && checkpointRows == 0 && !formulas.inOrder(new ArrayList<>(labOutputs.keySet()));
+   }
+
+   /*
+    * pipeline: Method that calculates the rows of continuous mode from a given first to last row and writes them with a given stage
+    * Blocks of rows go from the inputs to the state, QCS, lab and writing stages through bounded queues, each stage on its own thread, and the
+    * dataset window holds the rows in between. The inputs stage works out the count of random numbers that the state, QCS and lab variables
+    * of each row start from, so the rows are the same as nextRow calculates. The lab has its own dynamics, since the QCS is on other rows
+    */
+   private void pipeline(int first, int last, RowPipeline.Stage write) throws IOException {
+      int stateNoises = formulas.state.noises();
+      int qcsNoises = formulas.qcs.noises();
+      Dynamics labDynamics = new Dynamics(lastInputCol + 2);
+      copyDynamics(dynamics, labDynamics);
+      RowPipeline.Stage inputs = block -> {
+         block.draws = new long[block.last - block.first + 1];
+         for (int row = block.first; row <= block.last; row++){
+            checkCancelled();
+            if (continuous == 2)
+               randomInputs(row);
+            else
+               cycleInputs(row);
+            block.draws[row - block.first] = draws;
+            draws += stateNoises + qcsDraws(row, qcsNoises) + labSamples(row);
          }
-         else if (name.contains("PulpEye")) {
-            numRows = pulpeyePeriod;
+      };
+      RowPipeline.Stage state = block -> {
+         long[] task = new long[1];
+         taskDraws.set(task);
+         for (int row = block.first; row <= block.last; row++){
+            checkCancelled();
+            task[0] = block.draws[row - block.first];
+            stateRow(row);
          }
-         else
-            numRows = 1;
-         clear(numRows, col);
-      }
-      // After rows had been cleared, there is more Java heap memory available to read the remaining rows
-      read(firstVal - 1);
-      for (int col = 2; col < firstVal; col++){
-         int numRows;
-         String name = data.get(1, col);
-         if (name.contains("PulpEye")) {
-            numRows = pulpeyePeriod;
+      };
+      RowPipeline.Stage qcs = block -> {
+         long[] task = new long[1];
+         taskDraws.set(task);
+         for (int row = block.first; row <= block.last; row++){
+            checkCancelled();
+            task[0] = block.draws[row - block.first] + stateNoises;
+            qcsRow(row);
          }
+      };
+      RowPipeline.Stage lab = block -> {
+         long[] task = new long[1];
+         taskDraws.set(task);
+         for (int row = block.first; row <= block.last; row++){
+            checkCancelled();
+            task[0] = block.draws[row - block.first] + stateNoises + qcsDraws(row, qcsNoises);
+            labRow(row, labDynamics);
+         }
+      };
+      new RowPipeline().run(first, last, PIPELINE_BLOCK_ROWS, inputs, state, qcs, lab, write);
+      // The lab's dynamics are kept for a checkpoint, they are the same as the QCS dynamics for a column both of them move
+      for (int col : labInputs)
+         copyDynamics(labDynamics, dynamics, col);
+      for (int col : labStates)
+         copyDynamics(labDynamics, dynamics, col + numInputs);
+   }
+
+   // qcsDraws: Method for the number of random numbers the QCS formulas draw on a given row, given the number they draw on each row they calculate
+   private int qcsDraws(int row, int qcsNoises){
+      return formulas.qcs.calculates(row, qcsAllRows) ? qcsNoises : 0;
+   }
+
+   // labSamples: Method for the number of lab outputs sampled on a given row, each of which draws a random number
+   private int labSamples(int row){
+      int samples = 0;
+      for (int col = lastInputCol + 1; col <= lastInputCol + numOutputs; col++){
+         if (data.isSample(row, col))
+            samples++;
+      }
+      return samples;
+   }
+
+   // copyDynamics: Method for copying the dynamics of every column from one Dynamics to another
+   private static void copyDynamics(Dynamics from, Dynamics to){
+      for (int col = 0; col < from.at.length; col++)
+         copyDynamics(from, to, col);
+   }
+
+   // copyDynamics: Method for copying the dynamics of a given column from one Dynamics to another
+   private static void copyDynamics(Dynamics from, Dynamics to, int col){
+      to.result[col] = from.result[col];
+      to.prior[col] = from.prior[col];
+      to.at[col] = from.at[col];
+   }
+
+   /*
+    * cycleInputs: Method that copies the inputs of a given row from the move schedule
+    * The move schedule is created again with new noise each time it ends, and its sine values continue from the previous schedule
+    */
+   private void cycleInputs(int row){
+      if (cycle == null || row - rowOffset > finalRow){
+         rowOffset = row - Dataset.FIRST_ROW;
+         cycleDraws = draws;
+         newCycle();
+      }
+      for (int col = 2; col <= numInputs + 1; col++){
+         data.set(row, col, cycle.get(row - rowOffset, col));
+      }
+   }
+
+   /*
+    * newCycle: Method that creates the move schedule for continuous mode, starting at the current row offset
+    */
+   private void newCycle(){
+      if (cycle == null)
+         cycle = new Dataset(numInputs + 1, data.isSingle(), 0, data.storage());
+      createInputs(cycle);
+   }
+
+   /*
+    * randomInputs: Method that calculates the inputs of a given row with random moves
+    * At the start of each move every input moves towards a new random value between its min and max, filtered by its MV lag
+    */
+   private void randomInputs(int row){
+      int moveRows = (int) Math.max(Math.round(inputSettle / processPeriod), 1);
+      // A run resumed from a move schedule checkpoint starts with a new move
+      boolean move = (row - Dataset.FIRST_ROW) % moveRows == 0 || target == null;
+      if (target == null)
+         target = new double[numInputs + 2];
+      if (randomMin == null)
+         setRandomInputs();
+      for (int i = 2; i <= numInputs + 1; i++){
+         double min = randomMin[i];
+         double max = randomMax[i];
+         double mvFilter = mvFilters[i];
+         if (move)
+            target[i] = min + random() * (max - min);
+         double priorVal = data.get(row - 1, i);
+         if (Double.isNaN(priorVal))
+            priorVal = min + (max - min) / 2;
+         double newVal = priorVal * (1 - mvFilter) + target[i] * mvFilter;
+         if (newVal < min)
+            newVal = min;
+         else if (newVal > max)
+            newVal = max;
+         data.set(row, i, newVal + calcNoise(randomNoise[i]) + calcSine(sinePeriods[i], amplitudes[i], row));
+      }
+   }
+
+   // setRandomInputs: Method for reading the settings of each input in the random continuous mode from the input configurations
+   private void setRandomInputs(){
+      randomMin = new double[numInputs + 2];
+      randomMax = new double[numInputs + 2];
+      randomNoise = new double[numInputs + 2];
+      sinePeriods = new double[numInputs + 2];
+      amplitudes = new double[numInputs + 2];
+      mvFilters = new double[numInputs + 2];
+      for (int i = 2; i <= numInputs + 1; i++){
+         randomMin[i] = Double.parseDouble(input.get(9, i));
+         randomMax[i] = Double.parseDouble(input.get(8, i));
+         randomNoise[i] = Double.parseDouble(input.get(6, i));
+         sinePeriods[i] = Double.parseDouble(input.get(10, i));
+         amplitudes[i] = Double.parseDouble(input.get(11, i));
+         double mvLag = Double.parseDouble(input.get(7, i));
+         if (mvLag <= 0)
+            mvFilters[i] = 1;
          else
-            numRows = 1;
-         clear(numRows, col);
+            mvFilters[i] = Math.min(0.63 / (mvLag / processPeriod), 1);
       }
+   }
 
-      startDate = startDate + " 00:00:00";
-      data.put(3, 1, startDate);
-      /*
-       * Parts of the below code was adapted from this tutorial (under sections 3, 4, 5): https://howtodoinjava.com/java/date-time/java-localdatetime-class/#3-parsing-a-string-to-localdatetime
-       */
+   /*
+    * setCheckpoint: Method that sets the file that the generation state is saved to, every given number of rows in continuous mode and at the end
+    */
+   public void setCheckpoint(String file, long rows){
+      checkpointFile = file;
+      checkpointRows = rows;
+   }
+
+   /*
+    * setColumns: Method that sets the columns written to the output, given their names, before the dataset is generated
+    * Only the columns they depend on are calculated: the variables of a lab output's configuration and the columns read by the formulas
+    * that set a state or QCS column, along with the columns those depend on. The rest still draw their random numbers, so the columns
+    * that are written have the same values as when every column is generated with the same seed
+    */
+   public void setColumns(List<String> names){
+      for (String name : names){
+         if (searchCol(name, data) == 0)
+            throw new IllegalArgumentException("Column " + name + " is not an input, state or lab output variable");
+      }
+      List<String> list = new ArrayList<>(names);
+      // Formulas that draw noise inside an if() are all kept (see Formulas.Section.prune), so the columns they read are needed too
+      for (Formulas.Section section : new Formulas.Section[] {formulas.state, formulas.qcs}){
+         for (int i = 0; i < section.names.size(); i++){
+            if (section.noises() < 0 && !section.local.get(i) && !list.contains(section.names.get(i)))
+               list.add(section.names.get(i));
+         }
+      }
+      for (int i = 0; i < list.size(); i++){
+         String name = list.get(i);
+         List<String> reads = new ArrayList<>();
+         formulas.state.depends(name, reads);
+         formulas.qcs.depends(name, reads);
+         if (labOutputs.containsKey(name)){
+            for (int j = 2; j <= labOutputs.get(name).rowKeySet().size(); j++)
+               reads.add(labOutputs.get(name).get(j, 1));
+         }
+         for (String read : reads){
+            if (!list.contains(read))
+               list.add(read);
+         }
+      }
+
+      needed = new boolean[data.columns() + 1];
+      for (String name : list)
+         needed[searchCol(name, data)] = true;
+      for (int col = 2; col <= data.columns(); col++)
+         data.setWritten(col, names.contains(data.name(col)));
+      formulas.state.prune(list);
+      formulas.qcs.prune(list);
+      compileFormulas();
+      // Only the lab outputs that are calculated move their variables
+      labInputs = new ArrayList<>();
+      labStates = new ArrayList<>();
+      for (int col = lastInputCol + 1; col <= lastInputCol + numOutputs; col++){
+         if (needed[col]){
+            labList(data.name(col), labInputs, numInputs, input);
+            labList(data.name(col), labStates, numState, state);
+         }
+      }
+   }
+
+   /*
+    * setWindow: Method that sets the first and last rows written, given as row numbers or as a TIME (MM/dd/yy HH:mm:ss), before the dataset is generated
+    * A blank first or last row is the start or end of the move schedule, a first TIME is the first row at or after it and a last TIME the last row at or before it.
+    * A last row after the end of the move schedule is the end of the move schedule
+    */
+   public void setWindow(String from, String to){
+      int first = from == null ? Dataset.FIRST_ROW : row(from, true);
+      int last = to == null ? schedule().lastRow : Math.min(row(to, false), schedule().lastRow);
+      setWindow(first, last);
+   }
+
+   /*
+    * setPhase: Method that sets the rows written to a phase of the move schedule, given the start of its name such as 'validation'
+    */
+   public void setPhase(String name){
+      MoveSchedule.Phase phase = schedule().phase(name);
+      if (phase == null)
+         throw new IllegalArgumentException("There is no phase " + name + " in the move schedule");
+      setWindow(phase.first, phase.last);
+   }
+
+   /*
+    * setWindow: Method that sets the first and last rows written, before the dataset is generated
+    * Only the rows of the window are calculated, after enough warm-up rows for the dead times and for the lags to settle (see warmupRows).
+    * The inputs are written from the move schedule and every row draws the same random numbers as the whole move schedule does with the
+    * same seed, so the window has the same values, apart from dynamically moved values that differ by less than WARMUP_ERROR of a move
+    */
+   public void setWindow(int first, int last){
+      if (continuous > 0)
+         throw new IllegalArgumentException("A window can only be generated from a single move schedule");
+      int lastRow = schedule().lastRow;
+      if (first < Dataset.FIRST_ROW || last > lastRow || first > last)
+         throw new IllegalArgumentException("The window must be within rows " + Dataset.FIRST_ROW + " to " + lastRow + " of the move schedule");
+      firstRow = first;
+      windowLast = last;
+      // Formulas that draw noise inside an if() draw an unknown number of random numbers on each row, so every row is calculated
+      if (formulas.state.noises() < 0 || formulas.qcs.noises() < 0)
+         return;
+      calcFirst = Math.max(first - warmupRows(), Dataset.FIRST_ROW);
+      calcLast = last;
+      // The dynamics start once the dead times can look back on rows that are calculated
+      if (calcFirst > Dataset.FIRST_ROW)
+         dynRow = Math.max(dynRow, calcFirst + deadRows() + 1);
+   }
+
+   // row: Method for the row of a given row number or TIME, the first row at or after a TIME, or the last row at or before it
+   private int row(String text, boolean after){
+      if (text.matches("\\d+"))
+         return Integer.parseInt(text);
       DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss");
-      for (int i = 4; i <= finalRow; i++){
-         LocalDateTime date = LocalDateTime.parse(data.get(i-1, 1), formatter);
-         data.put(i, 1, date.plusSeconds(processPeriod).format(formatter));
+      long start = LocalDateTime.parse(startDate + " 00:00:00", formatter).toEpochSecond(ZoneOffset.UTC);
+      long seconds = LocalDateTime.parse(text, formatter).toEpochSecond(ZoneOffset.UTC) - start;
+      long rows = after ? Math.floorDiv(seconds + processPeriod - 1, processPeriod) : Math.floorDiv(seconds, processPeriod);
+      return (int) Math.max(Math.min(Dataset.FIRST_ROW + rows, Integer.MAX_VALUE), Integer.MIN_VALUE);
+   }
+
+   /*
+    * setAggregates: Method that sets the interval in seconds and the statistics of each written column that are written to a file of their own,
+    * worked out as the rows are written. When only the statistics are written the rows are not written at all
+    */
+   public void setAggregates(int seconds, List<String> stats, boolean only){
+      if (seconds <= 0 || seconds % processPeriod != 0)
+         throw new IllegalArgumentException("The aggregate interval must be a whole number of process periods of " + processPeriod + " s");
+      for (String stat : stats){
+         if (!Aggregator.STATS.contains(stat))
+            throw new IllegalArgumentException("Unknown statistic " + stat + ", the statistics are " + Aggregator.STATS);
       }
-      DateTimeFormatter current = DateTimeFormatter.ofPattern("MM-dd-yyyy-HH-mm-ss-SSS");
-      String time = LocalDateTime.now().format(current);
-      // End of code reference
-      // Final dataset can be written to with timings
-      write(true, time);
+      aggregateSeconds = seconds;
+      aggregateStats = stats;
+      aggregateOnly = only;
+   }
+
+   // needs: Method for checking if a given column is calculated
+   private boolean needs(int col){
+      return needed == null || needed[col];
+   }
+
+   // needed: Method for the number of columns that are calculated from a given first to last column
+   private int needed(int first, int last){
+      int count = 0;
+      for (int col = first; col <= last; col++){
+         if (needs(col))
+            count++;
+      }
+      return count;
+   }
+
+   /*
+    * saveCheckpoint: Method that saves the state needed to carry on generating from a given row
+    * The file is written under a temporary name first, so a crash while saving leaves the previous checkpoint in place
+    */
+   private void saveCheckpoint(int next) throws IOException {
+      File temp = new File(checkpointFile + ".tmp");
+      int history = historyRows();
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))){
+         out.writeInt(CHECKPOINT_MAGIC);
+         out.writeInt(CHECKPOINT_VERSION);
+         out.writeInt(data.columns());
+         out.writeInt(processPeriod);
+         out.writeInt(history);
+         out.writeInt(next);
+         out.writeLong(seed);
+         out.writeLong(draws);
+         // The move schedule is not saved, it is created again from the count of random numbers drawn before it
+         out.writeBoolean(cycle != null);
+         out.writeInt(rowOffset);
+         out.writeLong(cycleDraws);
+         writeArray(out, target);
+         writeArray(out, dynamics.result);
+         writeArray(out, dynamics.prior);
+         for (int at : dynamics.at)
+            out.writeInt(at);
+         // The rows that the dead times and lags look back on
+         int from = Math.max(next - history, Dataset.FIRST_ROW);
+         out.writeInt(from);
+         out.writeBoolean(data.isSingle());
+         for (int row = from; row < next; row++){
+            for (int col = 2; col <= data.columns(); col++){
+               if (data.isSingle())
+                  out.writeFloat((float) data.get(row, col));
+               else
+                  out.writeDouble(data.get(row, col));
+            }
+         }
+      }
+      Files.move(temp.toPath(), new File(checkpointFile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      checkpointSaved = true;
    }
 
    /*
-    * clear: Method that clears data from rows given a row and column number
+    * resume: Method that loads a checkpoint, so the rows are generated from where the checkpoint was saved
+    * A checkpoint saved at the end of a single move schedule is carried on with a new move schedule, extending that dataset
     */
-   private void clear(int row, int col){
-      for (int i = 4; i <= finalRow; i++){
-         if ((i - 3) % row != 0)
-            data.put(i, col, "");
+   public void resume(String file) throws IOException {
+      if (continuous == 0)
+         throw new IOException("A checkpoint can only be resumed in continuous mode");
+      boolean hasCycle;
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+         if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION)
+            throw new IOException(file + " is not a checkpoint");
+         if (in.readInt() != data.columns() || in.readInt() != processPeriod || in.readInt() != historyRows())
+            throw new IOException("Checkpoint " + file + " was saved with a different configuration");
+         firstRow = in.readInt();
+         seed = in.readLong();
+         draws = in.readLong();
+         hasCycle = in.readBoolean();
+         rowOffset = in.readInt();
+         cycleDraws = in.readLong();
+         target = readArray(in);
+         dynamics.result = readArray(in);
+         dynamics.prior = readArray(in);
+         for (int i = 0; i < dynamics.at.length; i++)
+            dynamics.at[i] = in.readInt();
+         int from = in.readInt();
+         boolean single = in.readBoolean();
+         for (int row = from; row < firstRow; row++){
+            for (int col = 2; col <= data.columns(); col++)
+               data.set(row, col, single ? in.readFloat() : in.readDouble());
+         }
+      }
+      if (continuous == 1 && hasCycle){
+         long drawn = draws;
+         draws = cycleDraws;
+         newCycle();
+         draws = drawn;
       }
    }
+
+   // writeArray: Method for writing an array of values given the stream and the array, which can be null
+   private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+      out.writeInt(values == null ? -1 : values.length);
+      if (values != null){
+         for (double value : values)
+            out.writeDouble(value);
+      }
+   }
+
+   // readArray: Method for reading an array of values given the stream, null if no array was written
+   private static double[] readArray(DataInputStream in) throws IOException {
+      int length = in.readInt();
+      if (length < 0)
+         return null;
+      double[] values = new double[length];
+      for (int i = 0; i < length; i++)
+         values[i] = in.readDouble();
+      return values;
+   }
 }
@@ -0,0 +1,82 @@
+package generator;
+
+import java.util.Arrays;
+
+// HeapStore class holds the dataset columns in arrays on the Java heap
+public class HeapStore implements DatasetStore {
+
+   // doubles: The column values when stored with double precision
+   private double[][] doubles;
+   // floats: The column values when stored with float32 precision
+   private float[][] floats;
+
+   public HeapStore(int columns, boolean single){
+      if (single)
+         floats = new float[columns + 1][];
+      else
+         doubles = new double[columns + 1][];
+   }
+
+   @Override
+   public void allocate(int col, int length){
+      if (floats != null){
+         floats[col] = new float[length];
+         Arrays.fill(floats[col], Float.NaN);
+      }
+      else{
+         doubles[col] = new double[length];
+         Arrays.fill(doubles[col], Double.NaN);
+      }
+   }
+
+   @Override
+   public void resize(int col, int length){
+      int last = length(col);
+      if (floats != null){
+         floats[col] = Arrays.copyOf(floats[col], length);
+         if (length > last)
+            Arrays.fill(floats[col], last, length, Float.NaN);
+      }
+      else{
+         doubles[col] = Arrays.copyOf(doubles[col], length);
+         if (length > last)
+            Arrays.fill(doubles[col], last, length, Double.NaN);
+      }
+   }
+
+   @Override
+   public int length(int col){
+      return floats != null ? floats[col].length : doubles[col].length;
+   }
+
+   @Override
+   public double get(int col, int i){
+      return floats != null ? floats[col][i] : doubles[col][i];
+   }
+
+   @Override
+   public void set(int col, int i, double value){
+      if (floats != null)
+         floats[col][i] = (float) value;
+      else
+         doubles[col][i] = value;
+   }
+
+   @Override
+   public void copy(int col, int from, double[] values, int offset, int length){
+      if (floats != null){
+         for (int i = 0; i < length; i++)
+            values[offset + i] = floats[col][from + i];
+      }
+      else
+         System.arraycopy(doubles[col], from, values, offset, length);
+   }
+
+   @Override
+   public void free(){
+      if (floats != null)
+         Arrays.fill(floats, null);
+      else
+         Arrays.fill(doubles, null);
+   }
+}
@@ -0,0 +1,120 @@
+package generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+// HistorianStream class emits dataset rows at their TIME stamps to emulate a live plant historian feed
+public class HistorianStream {
+
+   // SPIN_NANOS: The final part of each wait that is spun instead of parked, since a parked thread can wake up late
+   private static final long SPIN_NANOS = 1000000;
+   // LATE_NANOS: A row that is sent later than this after its TIME is counted as late
+   private static final long LATE_NANOS = 1000000;
+
+   // sink: Where the rows are sent ("file", "pipe" or "socket")
+   private String sink;
+   // target: The file or named pipe path, or the localhost port of the socket
+   private String target;
+   // speed: How many times faster than real time the rows are sent (0 sends them without waiting)
+   private double speed;
+   // lateRows: The number of rows that were sent late
+   private long lateRows;
+   // maxLate: The latest that a row was sent after its TIME, in nanoseconds
+   private long maxLate;
+
+   public HistorianStream(String sink, String target, double speed){
+      this.sink = sink;
+      this.target = target;
+      this.speed = speed;
+   }
+
+   /*
+    * run: Method that sends the heading and then every row from a first to a last row, waiting for the TIME of each row
+    * Each row is passed to 'prepare' before it is formatted, so rows can be calculated as they are sent (continuous mode)
+    * Writes block when the reader falls behind, so a slow reader holds back the stream instead of rows being dropped.
+    * Rows that are due while a write is blocked are sent as soon as it returns, so the stream keeps to the original times.
+    */
+   public void run(RowFormatter formatter, int firstRow, int lastRow, int period, IntConsumer prepare) throws IOException {
+      Socket socket = null;
+      OutputStream out;
+      if (sink.equals("socket")){
+         socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(target));
+         socket.setTcpNoDelay(true);
+         out = socket.getOutputStream();
+      }
+      else if (sink.equals("pipe")){
+         // The named pipe must already exist (mkfifo), opening it waits until a reader connects
+         if (!new File(target).exists())
+            throw new IOException("Named pipe " + target + " not found");
+         out = new FileOutputStream(target);
+      }
+      else
+         // Rows are added to the end of the file so it can be followed with 'tail -f'
+         out = new FileOutputStream(target, true);
+
+      try {
+         out.write(formatter.heading());
+         out.flush();
+         double rowNanos = speed > 0 ? period * 1e9 / speed : 0;
+         long begin = System.nanoTime();
+         for (int row = firstRow; row <= lastRow; row++){
+            // The row is formatted before its time, so only the write is left once the time is reached
+            prepare.accept(row);
+            formatter.reset();
+            formatter.appendRow(row);
+            if (speed > 0){
+               long due = begin + (long) ((row - firstRow) * rowNanos);
+               waitUntil(due);
+               long late = System.nanoTime() - due;
+               if (late > LATE_NANOS)
+                  lateRows++;
+               maxLate = Math.max(maxLate, late);
+            }
+            formatter.writeTo(out);
+            out.flush();
+            if (row == Integer.MAX_VALUE)
+               break;
+         }
+      }
+      finally {
+         out.close();
+         if (socket != null)
+            socket.close();
+      }
+      System.out.println("Stream finished: " + (lastRow - firstRow + 1) + " rows, " + lateRows + " late, latest " + maxLate / 1000 + " us");
+   }
+
+   /*
+    * waitUntil: Method that waits until a given System.nanoTime() value
+    * The thread is parked for most of the wait and spins for the final part, which keeps the timing error well below a millisecond
+    */
+   private void waitUntil(long due){
+      long remaining = due - System.nanoTime();
+      while (remaining > SPIN_NANOS){
+         LockSupport.parkNanos(remaining - SPIN_NANOS);
+         remaining = due - System.nanoTime();
+      }
+      while (System.nanoTime() < due)
+         Thread.onSpinWait();
+   }
+
+   /*
+    * lateRows: Method that returns the number of rows that were sent more than a millisecond after their time
+    */
+   public long lateRows(){
+      return lateRows;
+   }
+
+   /*
+    * maxLate: Method that returns the latest that a row was sent after its time, in nanoseconds
+    */
+   public long maxLate(){
+      return maxLate;
+   }
+}
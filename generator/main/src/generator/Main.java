@@ -1,10 +1,63 @@
 package generator;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 // Main class which is run at the command line
 public class Main {
 
+   // CANCEL_WAIT: How long a stopped process waits for the generation to remove its files, in milliseconds
+   private static final long CANCEL_WAIT = 10000;
+
+   // running: The generators of the command line run
+   private static final List<Generator> running = new CopyOnWriteArrayList<>();
+   // finished: Has the command line run finished?
+   private static volatile boolean finished;
+   // cancelled: Has the command line run been cancelled by stopping the process?
+   private static volatile boolean cancelled;
+
    public static void main(String[] args) {
 
+      // With a configuration folder the dataset is generated without the user interface
+      if (args.length > 0){
+         // Stopping the process (Ctrl+C or a kill signal) cancels the generation, so its unfinished files are removed before it exits
+         Thread main = Thread.currentThread();
+         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!finished){
+               cancelled = true;
+               for (Generator gen : running)
+                  gen.cancel();
+               try {
+                  main.join(CANCEL_WAIT);
+               }
+               catch (InterruptedException e){
+                  // The process exits anyway
+               }
+            }
+         }));
+         boolean success = generate(args);
+         finished = true;
+         // The process is already exiting when the generation was cancelled by a signal
+         if (!cancelled)
+            System.exit(success ? 0 : 1);
+         return;
+      }
+
       System.out.println("Dataset Generator loading...");
 
       //<editor-fold defaultstate="collapsed" desc=" Look and feel setting code (optional) ">
@@ -32,6 +85,434 @@ public class Main {
 
       System.out.println("Dataset Generator loaded");
    }
+
+   /*
+    * generate: Method that generates a dataset from the command line arguments, returning true if successful
+    * Arguments: <config folder> [--float] [--storage heap|off-heap|mapped] [--off-heap] [--digits N] [--format csv|arrow|long] [--by-time] [--columns <names>] [--from <row or time>] [--to <row or time>] [--phase <name>]
+    *            [--aggregate N[s|m|h]] [--stats <names>] [--aggregate-only] [--summary] [--stream file|pipe|socket --target <path or port>] [--speed X]
+    *            [--continuous cycle|random] [--rows N] [--roll-rows N] [--roll-bytes N[K|M|G]] [--roll-hours N]
+    *            [--threads N] [--seed N] [--checkpoint <file>] [--checkpoint-rows N] [--resume <file>]
+    *            [--plan] [--scenario <config folder>]... [--ensemble N]
+    */
+   private static boolean generate(String[] args){
+      String stream = null;
+      String target = null;
+      double speed = 1;
+      String checkpoint = null;
+      long checkpointRows = 0;
+      String resume = null;
+      boolean plan = false;
+      List<String> scenarios = new ArrayList<>();
+      int ensemble = 0;
+      try {
+         Config config = new Config(args[0]);
+         for (int i = 1; i < args.length; i++){
+            switch (args[i]){
+               case "--float":
+                  config.processVariables.put("Float", 1.0);
+                  break;
+               case "--storage":
+                  String storage = args[++i];
+                  if (!storage.equals("heap") && !storage.equals("off-heap") && !storage.equals("mapped")){
+                     usage();
+                     return false;
+                  }
+                  config.processVariables.put("Storage", (double) (storage.equals("heap") ? DatasetStore.HEAP : storage.equals("off-heap") ? DatasetStore.OFF_HEAP : DatasetStore.MAPPED));
+                  break;
+               case "--off-heap":
+                  config.processVariables.put("Storage", (double) DatasetStore.OFF_HEAP);
+                  break;
+               case "--digits":
+                  int digits = Integer.parseInt(args[++i]);
+                  if (digits < 0 || digits > RowFormatter.MAX_DIGITS){
+                     System.out.println("The digits must be from 0 to " + RowFormatter.MAX_DIGITS);
+                     usage();
+                     return false;
+                  }
+                  config.processVariables.put("Digits", (double) digits);
+                  break;
+               case "--format":
+                  String format = args[++i];
+                  if (!format.equals("csv") && !format.equals("arrow") && !format.equals("long")){
+                     usage();
+                     return false;
+                  }
+                  config.processVariables.put("Format", format.equals("arrow") ? 1.0 : format.equals("long") ? 2.0 : 0.0);
+                  break;
+               case "--by-time":
+                  config.processVariables.put("ByTime", 1.0);
+                  break;
+               case "--columns":
+                  config.columns = Arrays.asList(args[++i].split(","));
+                  break;
+               case "--from":
+                  config.from = args[++i];
+                  break;
+               case "--to":
+                  config.to = args[++i];
+                  break;
+               case "--phase":
+                  config.phase = args[++i];
+                  break;
+               case "--aggregate":
+                  config.aggregate = (int) seconds(args[++i]);
+                  break;
+               case "--stats":
+                  config.stats = Arrays.asList(args[++i].split(","));
+                  break;
+               case "--aggregate-only":
+                  config.aggregateOnly = true;
+                  break;
+               case "--summary":
+                  config.processVariables.put("Summary", 1.0);
+                  break;
+               case "--stream":
+                  stream = args[++i];
+                  break;
+               case "--target":
+                  target = args[++i];
+                  break;
+               case "--speed":
+                  speed = Double.parseDouble(args[++i]);
+                  break;
+               case "--continuous":
+                  String mode = args[++i];
+                  if (!mode.equals("cycle") && !mode.equals("random")){
+                     usage();
+                     return false;
+                  }
+                  config.processVariables.put("Continuous", mode.equals("cycle") ? 1.0 : 2.0);
+                  break;
+               case "--rows":
+                  config.processVariables.put("Rows", Double.parseDouble(args[++i]));
+                  break;
+               case "--roll-rows":
+                  config.processVariables.put("RollRows", Double.parseDouble(args[++i]));
+                  break;
+               case "--roll-bytes":
+                  config.processVariables.put("RollBytes", (double) bytes(args[++i]));
+                  break;
+               case "--roll-hours":
+                  config.processVariables.put("RollHours", Double.parseDouble(args[++i]));
+                  break;
+               case "--threads":
+                  config.processVariables.put("Threads", Double.parseDouble(args[++i]));
+                  break;
+               case "--seed":
+                  config.processVariables.put("Seed", Double.parseDouble(args[++i]));
+                  break;
+               case "--checkpoint":
+                  checkpoint = args[++i];
+                  break;
+               case "--checkpoint-rows":
+                  checkpointRows = Long.parseLong(args[++i]);
+                  break;
+               case "--resume":
+                  resume = args[++i];
+                  break;
+               case "--plan":
+                  plan = true;
+                  break;
+               case "--scenario":
+                  scenarios.add(args[++i]);
+                  break;
+               case "--ensemble":
+                  ensemble = Integer.parseInt(args[++i]);
+                  break;
+               default:
+                  System.out.println("Unknown option " + args[i]);
+                  usage();
+                  return false;
+            }
+         }
+         if (stream != null && (target == null || !(stream.equals("file") || stream.equals("pipe") || stream.equals("socket")))){
+            usage();
+            return false;
+         }
+         List<String> missing = config.missing();
+         if (!missing.isEmpty()){
+            System.out.println("The following variables are missing from inputs and state: " + missing);
+            return false;
+         }
+
+         if (!scenarios.isEmpty() || ensemble > 0){
+            if (stream != null || resume != null || checkpoint != null || (!scenarios.isEmpty() && ensemble > 0)){
+               System.out.println("Scenarios and ensembles cannot be streamed, checkpointed or combined");
+               return false;
+            }
+            if (ensemble > 0)
+               return generateEnsemble(config, ensemble, plan);
+            return generateScenarios(config, scenarios, plan);
+         }
+
+         // A window is a part of a single move schedule, which a checkpoint could not carry on from
+         boolean window = config.from != null || config.to != null || config.phase != null;
+         if (window && (resume != null || checkpoint != null || config.processVariables.getOrDefault("Continuous", 0.0) > 0)){
+            System.out.println("A window of rows cannot be generated in continuous mode, checkpointed or resumed");
+            return false;
+         }
+         // A resumed run carries on row by row, repeating the move schedule unless another continuous mode is given
+         if (resume != null && config.processVariables.getOrDefault("Continuous", 0.0) == 0)
+            config.processVariables.put("Continuous", 1.0);
+         // An Arrow file is only complete once its footer is written, so continuous mode needs a row count
+         if (config.processVariables.getOrDefault("Format", 0.0) == 1 && config.processVariables.getOrDefault("Continuous", 0.0) > 0
+             && config.processVariables.getOrDefault("Rows", 0.0) == 0){
+            System.out.println("Arrow output in continuous mode needs --rows");
+            return false;
+         }
+         Generator gen = config.generator();
+         running.add(gen);
+         // A plan only predicts the size of the dataset, nothing is generated
+         if (plan){
+            System.out.print(gen.plan());
+            return true;
+         }
+         if (resume != null)
+            gen.resume(resume);
+         if (checkpoint != null)
+            gen.setCheckpoint(checkpoint, checkpointRows);
+         System.out.println("Random seed " + gen.seed);
+         // Continuous mode calculates each row just before it is written
+         if (!gen.isContinuous()){
+            gen.createInputs();
+            gen.calcVariables();
+         }
+         if (stream != null)
+            gen.stream(new HistorianStream(stream, target, speed));
+         else {
+            new File("data").mkdirs();
+            gen.createDataset();
+            System.out.println("Dataset generated in the /data folder");
+         }
+         return true;
+      }
+      catch (CancellationException e){
+         System.out.println("Generation cancelled");
+         return false;
+      }
+      catch (Exception e){
+         System.out.println("Error: " + e);
+         e.printStackTrace();
+         return false;
+      }
+   }
+
+   /*
+    * generateScenarios: Method that generates the datasets of a configuration and its scenarios side by side, returning true if successful
+    * Scenarios only change the noise and sine amplitudes, so every dataset has the same move schedule. They share one seed, so the same
+    * random numbers are drawn at the same points in each dataset and the datasets only differ by their noise and sine settings.
+    */
+   private static boolean generateScenarios(Config config, List<String> folders, boolean plan) throws Exception {
+      // Set before the settings are copied to the scenarios
+      int parallel = parallel(config, folders.size() + 1);
+      List<Config> configs = new ArrayList<>();
+      configs.add(config);
+      for (String folder : folders){
+         Config scenario = new Config(folder);
+         if (!config.sameSchedule(scenario)){
+            System.out.println("Scenario " + folder + " differs from " + config.name + " in more than the noise and sine amplitudes");
+            return false;
+         }
+         // The command line settings apply to every scenario
+         scenario.processVariables = new HashMap<>(config.processVariables);
+         scenario.columns = config.columns;
+         scenario.from = config.from;
+         scenario.to = config.to;
+         scenario.phase = config.phase;
+         scenario.aggregate = config.aggregate;
+         scenario.stats = config.stats;
+         scenario.aggregateOnly = config.aggregateOnly;
+         configs.add(scenario);
+      }
+      if (plan){
+         System.out.print(config.generator().plan());
+         System.out.println("Scenarios: " + configs.size() + " datasets of this size, " + parallel + " at a time");
+         return true;
+      }
+      long seed = seed(config);
+      System.out.println("Random seed " + seed);
+      // The formulas are parsed and the move schedule worked out once for every scenario, each scenario calculates its own noise and sine values
+      config.share();
+      for (Config scenario : configs){
+         scenario.parsed = config.parsed;
+         scenario.schedule = config.schedule;
+      }
+
+      String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM-dd-yyyy-HH-mm-ss-SSS"));
+      List<Callable<Generator>> generators = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      for (Config scenario : configs){
+         generators.add(() -> scenario.generator(seed));
+         names.add(time + "-" + scenario.name);
+      }
+      runAll(generators, names, parallel);
+      System.out.println("Datasets generated in the /data folder");
+      return true;
+   }
+
+   /*
+    * generateEnsemble: Method that generates a number of realizations of a configuration, each with its own seed, returning true if successful
+    * Realization k uses the seed plus k, so any realization can be generated again on its own with that seed
+    */
+   private static boolean generateEnsemble(Config config, int count, boolean plan) throws Exception {
+      int parallel = parallel(config, count);
+      if (plan){
+         Plan first = config.generator().plan();
+         System.out.print(first);
+         System.out.printf("Ensemble: %d realizations, %d at a time using about %.1f MB%n", count, parallel, parallel * first.heapBytes / (1024.0 * 1024));
+         return true;
+      }
+      long seed = seed(config);
+      System.out.println("Random seed " + seed);
+      // The formulas are parsed and the move schedule worked out once for every realization
+      config.share();
+
+      String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM-dd-yyyy-HH-mm-ss-SSS"));
+      String number = "%0" + String.valueOf(count).length() + "d";
+      List<Callable<Generator>> generators = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      for (int k = 1; k <= count; k++){
+         long realization = seed + k;
+         generators.add(() -> config.generator(realization));
+         names.add(time + "-" + String.format(number, k));
+      }
+      List<String> files = runAll(generators, names, parallel);
+      // The manifest lists the file and seed of each realization
+      PrintWriter manifest = new PrintWriter(new FileWriter("data/" + time + "-ensemble.csv"));
+      manifest.print("File,Seed\r\n");
+      for (int k = 1; k <= count; k++)
+         manifest.print(files.get(k - 1) + "," + (seed + k) + "\r\n");
+      manifest.close();
+      System.out.println("Ensemble generated in the /data folder");
+      return true;
+   }
+
+   /*
+    * parallel: Method that returns how many datasets are generated at once, and shares the formatting threads between them
+    */
+   private static int parallel(Config config, int datasets){
+      int processors = Runtime.getRuntime().availableProcessors();
+      if (config.processVariables.getOrDefault("Threads", 0.0) == 0)
+         config.processVariables.put("Threads", (double) Math.max(processors / datasets, 1));
+      return Math.min(datasets, processors);
+   }
+
+   /*
+    * seed: Method that returns the seed of the command line settings, picking one when it is not set
+    */
+   private static long seed(Config config){
+      long seed = config.processVariables.getOrDefault("Seed", 0.0).longValue();
+      return seed != 0 ? seed : Generator.newSeed();
+   }
+
+   /*
+    * runAll: Method that generates datasets on a number of threads given how to create each generator and the file name of each dataset,
+    * returning the file each dataset is written to
+    * Each generator is only created when its turn comes and is released once its dataset is written, so only the running datasets use memory
+    */
+   private static List<String> runAll(List<Callable<Generator>> generators, List<String> names, int parallel) throws Exception {
+      new File("data").mkdirs();
+      ExecutorService pool = Executors.newFixedThreadPool(parallel);
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < generators.size(); i++){
+         Callable<Generator> create = generators.get(i);
+         String name = names.get(i);
+         results.add(pool.submit(() -> {
+            if (cancelled)
+               throw new CancellationException("Generation cancelled");
+            Generator gen = create.call();
+            running.add(gen);
+            try {
+               if (!gen.isContinuous()){
+                  gen.createInputs();
+                  gen.calcVariables();
+               }
+               gen.createDataset(name);
+               System.out.println("Generated " + gen.file(name));
+               return gen.file(name);
+            }
+            finally {
+               running.remove(gen);
+            }
+         }));
+      }
+      pool.shutdown();
+      List<String> files = new ArrayList<>();
+      try {
+         for (Future<String> result : results)
+            files.add(result.get());
+      }
+      catch (ExecutionException e){
+         // A failed or cancelled dataset stops the others
+         pool.shutdownNow();
+         for (Generator gen : running)
+            gen.cancel();
+         pool.awaitTermination(1, TimeUnit.MINUTES);
+         if (e.getCause() instanceof RuntimeException)
+            throw (RuntimeException) e.getCause();
+         throw e;
+      }
+      return files;
+   }
+
+   /*
+    * bytes: Method that reads a size in bytes with an optional K, M or G suffix
+    */
+   private static long bytes(String size){
+      String units = "KMG";
+      int unit = units.indexOf(Character.toUpperCase(size.charAt(size.length() - 1)));
+      if (unit < 0)
+         return Long.parseLong(size);
+      return Long.parseLong(size.substring(0, size.length() - 1)) << (10 * (unit + 1));
+   }
+
+   /*
+    * seconds: Method that reads a time in seconds with an optional s, m or h suffix
+    */
+   private static long seconds(String time){
+      String units = "smh";
+      int unit = units.indexOf(Character.toLowerCase(time.charAt(time.length() - 1)));
+      if (unit < 0)
+         return Long.parseLong(time);
+      return Long.parseLong(time.substring(0, time.length() - 1)) * (unit == 0 ? 1 : unit == 1 ? 60 : 3600);
+   }
+
+   /*
+    * usage: Method that prints the command line arguments
+    */
+   private static void usage(){
+      System.out.println("Usage: generator.Main <config folder> [options]");
+      System.out.println("  --float                    Store values as float32");
+      System.out.println("  --storage heap|off-heap|mapped Keep values on the heap, outside of it, or in memory mapped temporary files");
+      System.out.println("  --off-heap                 Same as --storage off-heap");
+      System.out.println("  --digits N                 Write values with N significant digits (0 = full)");
+      System.out.println("  --format csv|arrow|long    Write a CSV file (the default), an Arrow IPC file, or a TIME,TAG,VALUE line for each sample");
+      System.out.println("  --by-time                  Write the long format in TIME order, instead of one tag after another");
+      System.out.println("  --columns <names>          Only write the comma separated columns, and only calculate the columns they depend on");
+      System.out.println("  --from <row or time>       Only write the rows from a row number or TIME (MM/dd/yy HH:mm:ss), after a warm-up for the dynamics");
+      System.out.println("  --to <row or time>         Only write the rows up to a row number or TIME");
+      System.out.println("  --phase <name>             Only write a phase of the move schedule, such as validation, after a warm-up for the dynamics");
+      System.out.println("  --aggregate N[s|m|h]       Also write the statistics of each written column over every N seconds, minutes or hours");
+      System.out.println("  --stats <names>            The comma separated statistics of --aggregate: mean, min, max, first, last, count (default mean,min,max,last)");
+      System.out.println("  --aggregate-only           Only write the statistics of --aggregate, not the rows");
+      System.out.println("  --summary                  Also write the count, mean, variance, min, max and quantiles of each written column to a JSON file");
+      System.out.println("  --stream file|pipe|socket  Send rows at their TIME instead of writing a dataset");
+      System.out.println("  --target <path or port>    File or named pipe path, or localhost port for the stream");
+      System.out.println("  --speed X                  Stream X times faster than real time (0 = no waiting, default 1)");
+      System.out.println("  --continuous cycle|random  Generate rows without end, repeating the move schedule or with random moves");
+      System.out.println("  --rows N                   Stop continuous mode after N rows (0 = no limit)");
+      System.out.println("  --roll-rows N              Start a new output file every N rows");
+      System.out.println("  --roll-bytes N[K|M|G]      Start a new output file before it grows past N bytes");
+      System.out.println("  --roll-hours N             Start a new output file every N simulated hours");
+      System.out.println("  --threads N                Format the output file on N threads (0 = one for each processor)");
+      System.out.println("  --seed N                   Seed the random numbers, so the same seed gives the same dataset (0 = new seed)");
+      System.out.println("  --checkpoint <file>        Save the generation state to a file at the end, to extend the dataset later");
+      System.out.println("  --checkpoint-rows N        Also save the state every N rows in continuous mode");
+      System.out.println("  --resume <file>            Carry on generating from a saved state, in continuous mode");
+      System.out.println("  --plan                     Print the predicted rows, memory, output size and time without generating");
+      System.out.println("  --scenario <config folder> Also generate a configuration that only differs in noise and sine amplitudes, side by side");
+      System.out.println("  --ensemble N               Generate N realizations in parallel, realization k with the seed plus k");
+   }
 }
 
 
@@ -0,0 +1,77 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// MappedStore class holds each dataset column in a memory mapped temporary file, so the operating system can page values out to disk when memory is short
+public class MappedStore extends OffHeapStore {
+
+   // files: The temporary file of each column
+   private RandomAccessFile[] files;
+   // paths: The path of each temporary file
+   private File[] paths;
+
+   public MappedStore(int columns, boolean single){
+      super(columns, single);
+      files = new RandomAccessFile[columns + 1];
+      paths = new File[columns + 1];
+   }
+
+   @Override
+   public void allocate(int col, int length){
+      map(col, 0, length);
+   }
+
+   @Override
+   public void resize(int col, int length){
+      map(col, Math.min(length(col), length), length);
+   }
+
+   /*
+    * free: Method that unmaps every column and removes the temporary files
+    */
+   @Override
+   public void free(){
+      super.free();
+      for (int col = 0; col < files.length; col++){
+         try {
+            if (files[col] != null)
+               files[col].close();
+         }
+         catch (IOException e){
+            // The file is removed anyway
+         }
+         if (paths[col] != null)
+            paths[col].delete();
+         files[col] = null;
+         paths[col] = null;
+      }
+   }
+
+   /*
+    * map: Method that maps a given column to a given number of values, the values before a given index are kept and the rest are empty
+    * The file of the column keeps its values, so only the mapping is replaced
+    */
+   private void map(int col, int keep, int length){
+      try {
+         if (files[col] == null){
+            paths[col] = File.createTempFile("dataset-" + col + "-", ".bin");
+            paths[col].deleteOnExit();
+            files[col] = new RandomAccessFile(paths[col], "rw");
+         }
+         free(buffers[col]);
+         buffers[col] = null;
+         FileChannel channel = files[col].getChannel();
+         channel.truncate((long) length * bytes);
+         buffers[col] = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) length * bytes).order(ByteOrder.nativeOrder());
+         clear(col, keep, length);
+      }
+      catch (IOException e){
+         throw new UncheckedIOException("Cannot map column " + col + " of the dataset", e);
+      }
+   }
+}
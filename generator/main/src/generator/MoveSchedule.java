@@ -0,0 +1,217 @@
+package generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.Table;
+
+// MoveSchedule class holds the moves of the input variables as segments of rows, worked out once from the move counts and the Order row of the inputs
+// Each input is made from the segments in order, and each segment knows the count of random numbers drawn before its rows so the noise stays the same
+public class MoveSchedule {
+
+   // Segment class is a run of rows where every input holds a level or moves towards a target
+   static class Segment {
+      // first: The first row of the segment
+      int first;
+      // rows: The number of rows of the segment
+      int rows;
+      // move: True if the inputs are filtered from the row before towards their target by the MV lag, false if they hold their level
+      boolean move;
+      // values: The level or target of each input, NaN to hold the value of the row before the segment
+      double[] values;
+      // draw: The count of random numbers drawn before the first row of the first input
+      long draw;
+      // stride: The count of random numbers drawn between an input and the next one in the segment
+      long stride;
+   }
+
+   // Phase class is a phase of the schedule, from its first to its last row
+   static class Phase {
+      // name: The name of the phase, the same as in a Plan
+      String name;
+      // first, last: The first and last rows of the phase
+      int first;
+      int last;
+   }
+
+   // segments: The segments in the order they are written, a later segment can write over the rows of an earlier one
+   List<Segment> segments = new ArrayList<>();
+   // phases: The phases in the order of the schedule
+   List<Phase> phases = new ArrayList<>();
+   // lastSteadyStateRow: The last row of the settling after the isolated moves
+   int lastSteadyStateRow;
+   // lastRow: The last row of the validation moves
+   int lastRow;
+   // draws: The count of random numbers drawn for all of the inputs
+   long draws;
+   // moveRows: The number of rows of the steady state, settling and validation moves, and of each uncoupled move
+   private int moveRows;
+   // moveInc: The number of rows of each isolated move
+   private int moveInc;
+   // uncoupledMoves, isolatedMoves, coupledMoves: The move counts
+   private int uncoupledMoves;
+   private int isolatedMoves;
+   private int coupledMoves;
+   // numInputs: The number of input variables
+   private int numInputs;
+
+   /*
+    * MoveSchedule: Constructor that works out the moves from a given input configuration table, number of inputs, rows per move and move counts
+    */
+   public MoveSchedule(Table<Integer, Integer, String> input, int numInputs, double rowsPerMove, int uncoupledMoves, int isolatedMoves, int coupledMoves){
+      this.numInputs = numInputs;
+      this.uncoupledMoves = uncoupledMoves;
+      this.isolatedMoves = isolatedMoves;
+      this.coupledMoves = coupledMoves;
+      // The phase loops run while the row count is within rowsPerMove, the isolated moves round it instead
+      moveRows = (int) Math.floor(rowsPerMove);
+      moveInc = (int) Math.round(rowsPerMove);
+
+      double[] min = new double[numInputs];
+      double[] max = new double[numInputs];
+      double[] avg = new double[numInputs];
+      int[] order = new int[numInputs];
+      for (int i = 0; i < numInputs; i++){
+         min[i] = Double.parseDouble(input.get(9, i + 2));
+         max[i] = Double.parseDouble(input.get(8, i + 2));
+         avg[i] = min[i] + (max[i] - min[i]) / 2;
+         order[i] = Integer.parseInt(input.get(12, i + 2));
+      }
+
+      // Steady state rows at the average of each input
+      int row = Dataset.FIRST_ROW - 1;
+      add(row + 1, moveRows, false, avg, 0, moveRows);
+      row += moveRows;
+      addPhase("Steady state", row);
+      long phase = (long) numInputs * moveRows;
+
+      // Uncoupled moves, each input steps from its min to its max in its own turn of the Order and holds its last move in the other turns
+      long stride = (long) (uncoupledMoves + 1) * numInputs * moveRows;
+      for (int j = 0; j <= uncoupledMoves; j++){
+         for (int id = 1; id <= numInputs; id++){
+            double[] targets = new double[numInputs];
+            for (int i = 0; i < numInputs; i++){
+               double stepSize = uncoupledMoves != 0 ? (max[i] - min[i]) / uncoupledMoves : max[i] - min[i];
+               double move = min[i] + stepSize * j;
+               double lastMove = j == 0 ? min[i] : min[i] + stepSize * (j - 1);
+               targets[i] = order[i] >= 1 && order[i] <= id ? move : lastMove;
+            }
+            add(row + 1, moveRows, true, targets, phase + ((long) j * numInputs + id - 1) * moveRows, stride);
+            row += moveRows;
+         }
+      }
+      addPhase("Uncoupled moves", row);
+      phase += (long) numInputs * stride;
+
+      // Settling at the average, starting on the last row of the moves
+      add(row, moveRows, false, avg, phase, moveRows);
+      row += moveRows - 1;
+      addPhase("Settling", row);
+      phase += (long) numInputs * moveRows;
+
+      // Isolated moves, one input at a time steps from its min to its max while the others move to their average
+      // Each turn starts isolatedMoves moves after the one before, so it writes over the last move of the turn before
+      stride = (long) (numInputs + 1) * (isolatedMoves + 1) * moveInc;
+      for (int inputCount = 2; inputCount <= numInputs + 2; inputCount++){
+         for (int j = 0; j <= isolatedMoves; j++){
+            double[] targets = new double[numInputs];
+            for (int i = 0; i < numInputs; i++){
+               double stepSize = isolatedMoves != 0 ? (max[i] - min[i]) / isolatedMoves : max[i] - min[i];
+               targets[i] = order[i] == inputCount ? min[i] + stepSize * j : avg[i];
+            }
+            add(row + 1 + j * moveInc + (inputCount - 2) * isolatedMoves * moveInc, moveInc, true, targets,
+                phase + ((long) (inputCount - 2) * (isolatedMoves + 1) + j) * moveInc, stride);
+         }
+      }
+      row += moveInc * (1 + isolatedMoves + numInputs * isolatedMoves);
+      addPhase("Isolated moves", row);
+      phase += (long) numInputs * stride;
+
+      // Settling at the average again
+      add(row, moveRows, false, avg, phase, moveRows);
+      row += moveRows - 1;
+      addPhase("Settling", row);
+      phase += (long) numInputs * moveRows;
+      lastSteadyStateRow = row;
+
+      // Validation moves to the values of the validation rows, a blank value holds the input where it is
+      for (int v = 13; v <= 13 + coupledMoves; v++){
+         double[] levels = new double[numInputs];
+         for (int i = 0; i < numInputs; i++){
+            String value = input.get(v, i + 2);
+            levels[i] = value == null || value.equals("") ? Double.NaN : Double.parseDouble(value);
+         }
+         add(row + 1, moveRows, false, levels, phase, moveRows);
+         row += moveRows;
+         phase += (long) numInputs * moveRows;
+      }
+      addPhase("Validation moves", row);
+      lastRow = row;
+      draws = phase;
+   }
+
+   // add: Method for adding a segment given its first row, rows, kind, values, draws before it and draws between inputs
+   private void add(int first, int rows, boolean move, double[] values, long draw, long stride){
+      Segment segment = new Segment();
+      segment.first = first;
+      segment.rows = rows;
+      segment.move = move;
+      segment.values = values;
+      segment.draw = draw;
+      segment.stride = stride;
+      segments.add(segment);
+   }
+
+   // addPhase: Method for adding a phase given its name and last row, it starts on the row after the phase before it
+   private void addPhase(String name, int last){
+      Phase phase = new Phase();
+      phase.name = name;
+      phase.first = phases.isEmpty() ? Dataset.FIRST_ROW : phases.get(phases.size() - 1).last + 1;
+      phase.last = last;
+      phases.add(phase);
+   }
+
+   /*
+    * phase: Method that returns the first phase whose name starts with a given text, ignoring case, or null if there is none
+    */
+   Phase phase(String name){
+      for (Phase phase : phases){
+         if (phase.name.toLowerCase().startsWith(name.toLowerCase()))
+            return phase;
+      }
+      return null;
+   }
+
+   /*
+    * start: Method that returns the first segment to write for the rows from a given row on
+    * A segment that holds a level for every input does not read the rows before it, so the inputs can be written from the last one that
+    * starts by the given row, as long as every segment after it starts after it. Otherwise the inputs are written from the first segment
+    */
+   int start(int row){
+      int later = Integer.MAX_VALUE;
+      for (int k = segments.size() - 1; k >= 0; k--){
+         Segment segment = segments.get(k);
+         if (segment.first <= row && segment.first < later && !segment.move && holds(segment))
+            return k;
+         later = Math.min(later, segment.first);
+      }
+      return 0;
+   }
+
+   // holds: Method for checking if a given segment has a level for every input, instead of holding the value of the row before it
+   private static boolean holds(Segment segment){
+      for (double value : segment.values){
+         if (Double.isNaN(value))
+            return false;
+      }
+      return true;
+   }
+
+   /*
+    * addPhases: Method that adds the rows of each phase of the schedule to a given plan
+    */
+   void addPhases(Plan plan){
+      for (Phase phase : phases)
+         plan.addPhase(phase.name, phase.last - phase.first + 1);
+   }
+}
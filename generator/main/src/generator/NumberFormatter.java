@@ -0,0 +1,287 @@
+package generator;
+
+import java.math.BigInteger;
+
+// NumberFormatter class writes doubles and floats into a byte buffer as the shortest decimal text that reads back as the same value, without creating a String
+// The digits are found with the Schubfach algorithm (Raffaello Giulietti, "The Schubfach way to render doubles", 2020), and laid out the same way as
+// Double.toString and Float.toString, so only values that the older String.valueOf wrote with more digits than they need are written differently
+public final class NumberFormatter {
+
+   // MAX_CHARS: The most characters written for a value, for example -2.2250738585072014E-308
+   public static final int MAX_CHARS = 24;
+
+   // K_MIN, K_MAX: The range of the powers of ten used to scale the values
+   private static final int K_MIN = -324;
+   private static final int K_MAX = 292;
+   // G1, G0: The high and low 63 bits of floor(10^-k 2^-r) + 1 for each power k, where r = flog2pow10(-k) - 125
+   private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+   private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+   // MASK_63: The low 63 bits of a long
+   private static final long MASK_63 = (1L << 63) - 1;
+   // MASK_32: The low 32 bits of a long
+   private static final long MASK_32 = (1L << 32) - 1;
+   // POW10: The powers of ten up to the 17 digits of a double
+   private static final long[] POW10 = new long[18];
+
+   static {
+      POW10[0] = 1;
+      for (int i = 1; i < POW10.length; i++)
+         POW10[i] = POW10[i - 1] * 10;
+      for (int k = K_MIN; k <= K_MAX; k++){
+         int e = -k;
+         int r = flog2pow10(e) - 125;
+         BigInteger numerator = BigInteger.ONE;
+         BigInteger denominator = BigInteger.ONE;
+         if (e >= 0)
+            numerator = BigInteger.TEN.pow(e);
+         else
+            denominator = BigInteger.TEN.pow(-e);
+         if (r < 0)
+            numerator = numerator.shiftLeft(-r);
+         else
+            denominator = denominator.shiftLeft(r);
+         BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+         G1[k - K_MIN] = g.shiftRight(63).longValue();
+         G0[k - K_MIN] = g.longValue() & MASK_63;
+      }
+   }
+
+   private NumberFormatter(){
+   }
+
+   /*
+    * format: Method that writes a given double into a given buffer at a given index, returning the index after the text
+    * The buffer must have room for MAX_CHARS characters
+    */
+   public static int format(double v, byte[] buffer, int index){
+      long bits = Double.doubleToRawLongBits(v);
+      long t = bits & ((1L << 52) - 1);
+      int bq = (int) (bits >>> 52) & 0x7FF;
+      if (bq == 0x7FF)
+         return text(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", buffer, index);
+      if (bits < 0)
+         buffer[index++] = '-';
+      if (bq != 0){
+         int mq = 1075 - bq;
+         long c = (1L << 52) | t;
+         // Whole numbers below 2^53 are written as they are
+         if (0 < mq && mq < 53){
+            long f = c >> mq;
+            if (f << mq == c)
+               return chars(f, 0, buffer, index);
+         }
+         return toDecimal(-mq, c, 0, buffer, index);
+      }
+      if (t != 0)
+         return t < 3 ? toDecimal(-1074, 10 * t, -1, buffer, index) : toDecimal(-1074, t, 0, buffer, index);
+      return text("0.0", buffer, index);
+   }
+
+   /*
+    * format: Method that writes a given float into a given buffer at a given index, returning the index after the text
+    * The buffer must have room for MAX_CHARS characters
+    */
+   public static int format(float v, byte[] buffer, int index){
+      int bits = Float.floatToRawIntBits(v);
+      int t = bits & ((1 << 23) - 1);
+      int bq = (bits >>> 23) & 0xFF;
+      if (bq == 0xFF)
+         return text(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", buffer, index);
+      if (bits < 0)
+         buffer[index++] = '-';
+      if (bq != 0){
+         int mq = 150 - bq;
+         int c = (1 << 23) | t;
+         if (0 < mq && mq < 24){
+            int f = c >> mq;
+            if (f << mq == c)
+               return chars(f, 0, buffer, index);
+         }
+         return toDecimal(-mq, c, 0, buffer, index);
+      }
+      if (t != 0)
+         return t < 8 ? toDecimal(-149, 10 * t, -1, buffer, index) : toDecimal(-149, t, 0, buffer, index);
+      return text("0.0", buffer, index);
+   }
+
+   /*
+    * toDecimal: Method that writes the shortest decimal of the double c 2^q, where dk adjusts the power of ten of a tiny value that was multiplied by 10
+    * The candidates are the multiples of 10 and the two decimals either side of the value, the one inside the rounding interval and closest to the value is chosen
+    */
+   private static int toDecimal(int q, long c, int dk, byte[] buffer, int index){
+      int out = (int) c & 1;
+      long cb = c << 2;
+      long cbr = cb + 2;
+      long cbl;
+      int k;
+      // The interval below a power of two is half as wide as the one above it
+      if (c != (1L << 52) || q == -1074){
+         cbl = cb - 2;
+         k = flog10pow2(q);
+      }
+      else {
+         cbl = cb - 1;
+         k = flog10threeQuartersPow2(q);
+      }
+      int h = q + flog2pow10(-k) + 2;
+      long g1 = G1[k - K_MIN];
+      long g0 = G0[k - K_MIN];
+      long vb = rop(g1, g0, cb << h);
+      long vbl = rop(g1, g0, cbl << h);
+      long vbr = rop(g1, g0, cbr << h);
+      long s = vb >> 2;
+      if (s >= 100){
+         long sp10 = 10 * (s / 10);
+         long tp10 = sp10 + 10;
+         boolean upin = vbl + out <= sp10 << 2;
+         boolean wpin = (tp10 << 2) + out <= vbr;
+         if (upin != wpin)
+            return chars(upin ? sp10 : tp10, k, buffer, index);
+      }
+      long t = s + 1;
+      boolean uin = vbl + out <= s << 2;
+      boolean win = (t << 2) + out <= vbr;
+      if (uin != win)
+         return chars(uin ? s : t, k + dk, buffer, index);
+      long cmp = vb - (s + t << 1);
+      return chars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buffer, index);
+   }
+
+   /*
+    * toDecimal: Method that writes the shortest decimal of the float c 2^q, the same as for a double with a 64 bit scale
+    */
+   private static int toDecimal(int q, int c, int dk, byte[] buffer, int index){
+      int out = c & 1;
+      long cb = (long) c << 2;
+      long cbr = cb + 2;
+      long cbl;
+      int k;
+      if (c != (1 << 23) || q == -149){
+         cbl = cb - 2;
+         k = flog10pow2(q);
+      }
+      else {
+         cbl = cb - 1;
+         k = flog10threeQuartersPow2(q);
+      }
+      int h = q + flog2pow10(-k) + 33;
+      long g = G1[k - K_MIN] + 1;
+      int vb = rop(g, cb << h);
+      int vbl = rop(g, cbl << h);
+      int vbr = rop(g, cbr << h);
+      int s = vb >> 2;
+      if (s >= 100){
+         int sp10 = 10 * (s / 10);
+         int tp10 = sp10 + 10;
+         boolean upin = vbl + out <= sp10 << 2;
+         boolean wpin = (tp10 << 2) + out <= vbr;
+         if (upin != wpin)
+            return chars(upin ? sp10 : tp10, k, buffer, index);
+      }
+      int t = s + 1;
+      boolean uin = vbl + out <= s << 2;
+      boolean win = (t << 2) + out <= vbr;
+      if (uin != win)
+         return chars(uin ? s : t, k + dk, buffer, index);
+      int cmp = vb - (s + t << 1);
+      return chars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buffer, index);
+   }
+
+   // rop: Method for the rounded-to-odd product of the 126 bit scale g1 2^63 + g0 and cp, shifted down by 127 bits
+   private static long rop(long g1, long g0, long cp){
+      long x1 = Math.multiplyHigh(g0, cp);
+      long y0 = g1 * cp;
+      long y1 = Math.multiplyHigh(g1, cp);
+      long z = (y0 >>> 1) + x1;
+      long vbp = y1 + (z >>> 63);
+      return vbp | (z & MASK_63) + MASK_63 >>> 63;
+   }
+
+   // rop: Method for the rounded-to-odd product of the 64 bit scale g and cp, shifted down by 95 bits
+   private static int rop(long g, long cp){
+      long x1 = Math.multiplyHigh(g, cp);
+      long vbp = x1 >>> 31;
+      return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+   }
+
+   // flog10pow2: Method for floor(log10(2^e))
+   private static int flog10pow2(int e){
+      return (int) (e * 661_971_961_083L >> 41);
+   }
+
+   // flog10threeQuartersPow2: Method for floor(log10(3/4 2^e))
+   private static int flog10threeQuartersPow2(int e){
+      return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+   }
+
+   // flog2pow10: Method for floor(log2(10^e))
+   private static int flog2pow10(int e){
+      return (int) (e * 913_124_641_741L >> 38);
+   }
+
+   /*
+    * chars: Method that writes the decimal f 10^e, plain when it is from 10^-3 up to 10^7 and in E notation otherwise, the same as Double.toString
+    */
+   private static int chars(long f, int e, byte[] buffer, int index){
+      while (f % 10 == 0){
+         f = f / 10;
+         e++;
+      }
+      int len = 1;
+      while (len < POW10.length && f >= POW10[len])
+         len++;
+      // point: The power of ten of the value as 0.digits 10^point
+      int point = e + len;
+      if (point > 0 && point <= 7){
+         digits(f, len, point, buffer, index);
+         for (int i = len; i < point; i++)
+            buffer[index + i] = '0';
+         buffer[index + point] = '.';
+         index += Math.max(len, point) + 1;
+         if (len <= point)
+            buffer[index++] = '0';
+      }
+      else if (point > -3 && point <= 0){
+         buffer[index++] = '0';
+         buffer[index++] = '.';
+         for (int i = point; i < 0; i++)
+            buffer[index++] = '0';
+         digits(f, len, len, buffer, index);
+         index += len;
+      }
+      else {
+         digits(f, len, 1, buffer, index);
+         buffer[index + 1] = '.';
+         index += len + 1;
+         if (len == 1)
+            buffer[index++] = '0';
+         buffer[index++] = 'E';
+         int exponent = point - 1;
+         if (exponent < 0){
+            buffer[index++] = '-';
+            exponent = -exponent;
+         }
+         if (exponent >= 100)
+            buffer[index++] = (byte) ('0' + exponent / 100);
+         if (exponent >= 10)
+            buffer[index++] = (byte) ('0' + exponent / 10 % 10);
+         buffer[index++] = (byte) ('0' + exponent % 10);
+      }
+      return index;
+   }
+
+   // digits: Method for writing the len digits of f from a given index, last digit first, leaving a space for the point after the first 'before' digits
+   private static void digits(long f, int len, int before, byte[] buffer, int index){
+      for (int i = len - 1; i >= 0; i--){
+         buffer[index + i + (i >= before ? 1 : 0)] = (byte) ('0' + f % 10);
+         f = f / 10;
+      }
+   }
+
+   // text: Method for writing the characters of a given text
+   private static int text(String text, byte[] buffer, int index){
+      for (int i = 0; i < text.length(); i++)
+         buffer[index++] = (byte) text.charAt(i);
+      return index;
+   }
+}
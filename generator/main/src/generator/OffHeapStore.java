@@ -0,0 +1,116 @@
+package generator;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// OffHeapStore class holds the dataset columns in direct buffers outside of the Java heap, which the garbage collector does not scan or copy
+public class OffHeapStore implements DatasetStore {
+
+   // UNSAFE: Used to free the memory of a buffer straight away, null if it is not available
+   private static final Object UNSAFE = unsafe();
+   // INVOKE_CLEANER: The method of UNSAFE that frees a direct buffer
+   private static final Method INVOKE_CLEANER = cleaner();
+
+   // buffers: The column values
+   protected ByteBuffer[] buffers;
+   // single: Are the values stored with float32 precision?
+   protected boolean single;
+   // bytes: The size of each value
+   protected int bytes;
+
+   public OffHeapStore(int columns, boolean single){
+      this.single = single;
+      bytes = single ? Float.BYTES : Double.BYTES;
+      buffers = new ByteBuffer[columns + 1];
+   }
+
+   @Override
+   public void allocate(int col, int length){
+      free(buffers[col]);
+      buffers[col] = ByteBuffer.allocateDirect(length * bytes).order(ByteOrder.nativeOrder());
+      clear(col, 0, length);
+   }
+
+   @Override
+   public void resize(int col, int length){
+      ByteBuffer values = ByteBuffer.allocateDirect(length * bytes).order(ByteOrder.nativeOrder());
+      ByteBuffer last = buffers[col].duplicate().clear();
+      last.limit(Math.min(last.capacity(), values.capacity()));
+      values.put(last);
+      free(buffers[col]);
+      buffers[col] = values;
+      clear(col, last.limit() / bytes, length);
+   }
+
+   @Override
+   public int length(int col){
+      return buffers[col].capacity() / bytes;
+   }
+
+   @Override
+   public double get(int col, int i){
+      return single ? buffers[col].getFloat(i * Float.BYTES) : buffers[col].getDouble(i * Double.BYTES);
+   }
+
+   @Override
+   public void set(int col, int i, double value){
+      if (single)
+         buffers[col].putFloat(i * Float.BYTES, (float) value);
+      else
+         buffers[col].putDouble(i * Double.BYTES, value);
+   }
+
+   @Override
+   public void free(){
+      for (int col = 0; col < buffers.length; col++){
+         free(buffers[col]);
+         buffers[col] = null;
+      }
+   }
+
+   /*
+    * clear: Method that empties the values of a given column from a first index up to but not including a last index
+    */
+   protected void clear(int col, int from, int to){
+      for (int i = from; i < to; i++)
+         set(col, i, Double.NaN);
+   }
+
+   /*
+    * free: Method that returns the memory of a given buffer straight away, instead of when the garbage collector finds it is no longer used
+    */
+   protected static void free(ByteBuffer values){
+      if (INVOKE_CLEANER == null || values == null)
+         return;
+      try {
+         INVOKE_CLEANER.invoke(UNSAFE, values);
+      }
+      catch (ReflectiveOperationException e){
+         // The garbage collector frees the buffer instead
+      }
+   }
+
+   // unsafe: Method for finding the object that frees direct buffers, the buffers are left to the garbage collector when it is not available
+   private static Object unsafe(){
+      try {
+         Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+         field.setAccessible(true);
+         return field.get(null);
+      }
+      catch (ReflectiveOperationException | RuntimeException e){
+         return null;
+      }
+   }
+
+   // cleaner: Method for finding the method that frees a direct buffer
+   private static Method cleaner(){
+      try {
+         return UNSAFE == null ? null : UNSAFE.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+      }
+      catch (ReflectiveOperationException | RuntimeException e){
+         return null;
+      }
+   }
+}
@@ -0,0 +1,138 @@
+package generator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Plan class holds the predicted size of a dataset, worked out from the configurations without generating it
+public class Plan {
+
+   // COMPUTE_NANOS: The time to calculate one value, measured on a single core with a 1.5 million row dataset
+   private static final double COMPUTE_NANOS = 350;
+   // FORMAT_NANOS: The time to format and write one byte of the output, measured the same way
+   private static final double FORMAT_NANOS = 20;
+   // MB: The number of bytes in a megabyte
+   private static final double MB = 1024 * 1024;
+
+   // phases: The name and number of rows of each phase of the move schedule
+   private Map<String, Integer> phases = new LinkedHashMap<>();
+   // cycleRows: The number of rows in the move schedule
+   long cycleRows;
+   // rows: The number of rows generated (0 for no limit in continuous mode)
+   long rows;
+   // firstRow: The first row written of a window of the move schedule (0 for the whole move schedule)
+   int firstRow;
+   // warmupRows: The number of rows calculated before the first row written
+   long warmupRows;
+   // period: The process period in seconds
+   int period;
+   // inputs: The number of input columns
+   int inputs;
+   // states: The number of state columns
+   int states;
+   // outputs: The number of lab output columns
+   int outputs;
+   // rates: The number of columns sampled at each sample time in seconds
+   private TreeMap<Integer, Integer> rates = new TreeMap<>();
+   // valuesPerRow: The average number of values written on each row
+   double valuesPerRow;
+   // bytesPerRow: The average size of each row of the output
+   double bytesPerRow;
+   // aggregateSeconds: The interval of the statistics file (0 for no statistics file)
+   int aggregateSeconds;
+   // aggregateBytesPerRow: The size of each row of the statistics file
+   double aggregateBytesPerRow;
+   // heapBytes: The memory used to store the dataset
+   long heapBytes;
+   // storage: The kind of store the dataset is kept in
+   int storage;
+   // files: The number of output files (0 for no limit)
+   long files;
+   // threads: The number of threads that format the output
+   int threads;
+   // calcThreads: The number of threads the state, QCS and lab variables are calculated on at once (1 when they are calculated one after another)
+   int calcThreads = 1;
+
+   /*
+    * addPhase: Method that adds a phase of the move schedule given its name and number of rows
+    */
+   void addPhase(String name, int rows){
+      phases.merge(name, rows, Integer::sum);
+   }
+
+   /*
+    * addColumn: Method that adds a column given its sample time in seconds
+    */
+   void addColumn(int seconds){
+      rates.merge(seconds, 1, Integer::sum);
+   }
+
+   /*
+    * values: Method that returns the number of values written, -1 if there is no limit
+    */
+   public long values(){
+      return rows > 0 ? (long) (rows * valuesPerRow) : -1;
+   }
+
+   /*
+    * diskBytes: Method that returns the size of the output, -1 if there is no limit
+    */
+   public long diskBytes(){
+      return rows > 0 ? (long) (rows * bytesPerRow) : -1;
+   }
+
+   /*
+    * seconds: Method that returns the predicted time to generate the dataset, -1 if there is no limit
+    * Formatting is shared by the formatting threads, and the state, QCS and lab variables by the calculation threads. The inputs are created on one thread
+    */
+   public double seconds(){
+      if (rows <= 0)
+         return -1;
+      double compute = (rows + warmupRows) * (inputs + (double) (states + outputs) / Math.max(calcThreads, 1)) * COMPUTE_NANOS;
+      double format = diskBytes() * FORMAT_NANOS / Math.max(threads, 1);
+      return (compute + format) / 1e9;
+   }
+
+   /*
+    * toString: Method that returns the plan as lines of text
+    */
+   @Override
+   public String toString(){
+      StringBuilder text = new StringBuilder();
+      if (rows > 0)
+         text.append(String.format("Rows: %,d (%s at %d s)%n", rows, duration(rows * period), period));
+      else
+         text.append(String.format("Rows: no limit (continuous mode)%n"));
+      if (firstRow > 0)
+         text.append(String.format("Window: rows %,d to %,d, after %,d warm-up rows%n", firstRow, firstRow + rows - 1, warmupRows));
+      text.append(String.format("Move schedule: %,d rows (%s)%n", cycleRows, duration(cycleRows * period)));
+      for (Map.Entry<String, Integer> phase : phases.entrySet())
+         text.append(String.format("  %s: %,d rows%n", phase.getKey(), phase.getValue()));
+      text.append(String.format("Columns: %d (%d inputs, %d state, %d lab outputs)%n", inputs + states + outputs, inputs, states, outputs));
+      for (Map.Entry<Integer, Integer> rate : rates.entrySet())
+         text.append(String.format("  %d sampled every %d s%n", rate.getValue(), rate.getKey()));
+      text.append(String.format("Memory for the dataset: %.1f MB (%s)%n", heapBytes / MB, DatasetStore.name(storage)));
+      if (rows > 0){
+         text.append(String.format("Values: %,d%n", values()));
+         text.append(String.format("Output size: %.1f MB%s%n", diskBytes() / MB, files > 1 ? String.format(" in about %,d files", files) : ""));
+         if (aggregateSeconds > 0){
+            long intervals = (rows * period + aggregateSeconds - 1) / aggregateSeconds;
+            text.append(String.format("Statistics: %,d rows every %d s, %.1f MB%n", intervals, aggregateSeconds, intervals * aggregateBytesPerRow / MB));
+         }
+         text.append(String.format("Time to generate: about %s%n", duration((long) Math.ceil(seconds()))));
+      }
+      else {
+         text.append(String.format("Output size: %.1f MB for each day of process time%n", 86400.0 / period * bytesPerRow / MB));
+         if (aggregateSeconds > 0)
+            text.append(String.format("Statistics: a row every %d s, %.1f MB for each day of process time%n", aggregateSeconds, 86400.0 / aggregateSeconds * aggregateBytesPerRow / MB));
+      }
+      return text.toString();
+   }
+
+   // duration: Method for writing a number of seconds as days, hours, minutes and seconds
+   private static String duration(long seconds){
+      long days = seconds / 86400;
+      String time = String.format("%02d:%02d:%02d", seconds / 3600 % 24, seconds / 60 % 60, seconds % 60);
+      return days > 0 ? days + (days == 1 ? " day " : " days ") + time : time;
+   }
+}
@@ -0,0 +1,126 @@
+package generator;
+
+import java.util.Arrays;
+
+// QuantileSketch class estimates the quantiles of a stream of values with a fixed relative error, without keeping the values
+// Each value is counted in a bucket of values within a constant ratio of each other, on a log scale (DDSketch, Masson, Rim and Lee, 2019),
+// so a quantile is within the relative error of the value of that rank, however many values are added
+public class QuantileSketch {
+
+   // MIN_VALUE: The smallest magnitude that is counted in a bucket, smaller values are counted as zero
+   private static final double MIN_VALUE = 1e-300;
+
+   // gamma: The ratio between the upper and lower bounds of a bucket
+   private double gamma;
+   // logGamma: The natural logarithm of gamma
+   private double logGamma;
+   // positive, negative: The counts of the buckets of the positive values and of the magnitudes of the negative values
+   private Buckets positive = new Buckets();
+   private Buckets negative = new Buckets();
+   // zeros: The count of values that are zero or too small for a bucket
+   private long zeros;
+   // count: The count of values added
+   private long count;
+   // min, max: The smallest and largest values added, the quantiles are kept within them
+   private double min = Double.POSITIVE_INFINITY;
+   private double max = Double.NEGATIVE_INFINITY;
+
+   // Buckets class holds the counts of a range of bucket indexes that grows as values are added
+   private static class Buckets {
+      // counts: The count of each bucket from the lowest index
+      long[] counts = new long[0];
+      // lowest: The index of the first bucket in counts
+      int lowest;
+
+      // add: Method for counting a value in the bucket of a given index
+      void add(int index){
+         if (counts.length == 0){
+            counts = new long[16];
+            lowest = index - 8;
+         }
+         else if (index < lowest){
+            // The range grows at least twice as large, so it is copied a few times at most
+            int grow = Math.max(lowest - index, counts.length);
+            long[] larger = new long[counts.length + grow];
+            System.arraycopy(counts, 0, larger, grow, counts.length);
+            counts = larger;
+            lowest -= grow;
+         }
+         else if (index - lowest >= counts.length)
+            counts = Arrays.copyOf(counts, Math.max(index - lowest + 1, counts.length * 2));
+         counts[index - lowest]++;
+      }
+   }
+
+   /*
+    * QuantileSketch: Constructor that sets the relative error of the quantiles, such as 0.005 for 0.5%
+    */
+   public QuantileSketch(double relativeError){
+      gamma = (1 + relativeError) / (1 - relativeError);
+      logGamma = Math.log(gamma);
+   }
+
+   /*
+    * add: Method that adds a given value, NaN and infinite values are not counted
+    */
+   public void add(double value){
+      if (Double.isNaN(value) || Double.isInfinite(value))
+         return;
+      if (value > MIN_VALUE)
+         positive.add(index(value));
+      else if (value < -MIN_VALUE)
+         negative.add(index(-value));
+      else
+         zeros++;
+      count++;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+   }
+
+   // index: Method for the bucket of a given magnitude, bucket i holds the magnitudes from gamma^(i-1) up to gamma^i
+   private int index(double magnitude){
+      return (int) Math.ceil(Math.log(magnitude) / logGamma);
+   }
+
+   // value: Method for the value that stands for the magnitudes of a given bucket, the one with the same relative error to both of its bounds
+   private double value(int index){
+      return 2 * Math.pow(gamma, index) / (gamma + 1);
+   }
+
+   /*
+    * count: Method that returns the count of values added
+    */
+   public long count(){
+      return count;
+   }
+
+   /*
+    * quantile: Method that returns the estimated value at a given quantile from 0 to 1, NaN if no values have been added
+    * The value of rank q (count - 1), rounded down, is found by counting the buckets from the most negative value up. The value that stands
+    * for a bucket can be outside of the values added to it, so it is kept within the smallest and largest values added
+    */
+   public double quantile(double q){
+      if (count == 0)
+         return Double.NaN;
+      return Math.max(min, Math.min(max, bucketValue((long) (q * (count - 1)))));
+   }
+
+   // bucketValue: Method for the value that stands for the bucket of a given rank
+   private double bucketValue(long rank){
+      long seen = 0;
+      for (int i = negative.counts.length - 1; i >= 0; i--){
+         seen += negative.counts[i];
+         if (seen > rank)
+            return -value(negative.lowest + i);
+      }
+      seen += zeros;
+      if (seen > rank)
+         return 0;
+      for (int i = 0; i < positive.counts.length; i++){
+         seen += positive.counts[i];
+         if (seen > rank)
+            return value(positive.lowest + i);
+      }
+      return value(positive.lowest + positive.counts.length - 1);
+   }
+}
@@ -0,0 +1,171 @@
+package generator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// RollingWriter class writes dataset rows to a CSV file, or to a sequence of CSV files that are rolled every set number of rows, bytes or simulated hours
+public class RollingWriter {
+
+   // name: The file name without the '.csv' extension
+   private String name;
+   // formatter: The formatter that the rows are written from
+   private RowFormatter formatter;
+   // heading: The name and description rows written at the start of every file
+   private byte[] heading;
+   // maxRows: The number of rows in each file (0 for no limit)
+   private long maxRows;
+   // maxBytes: The largest size of each file (0 for no limit)
+   private long maxBytes;
+   // maxSeconds: The simulated time in each file, files start on multiples of this time from the start date (0 for no limit)
+   private long maxSeconds;
+   // period: The process period in seconds
+   private int period;
+   // out: The current file
+   private OutputStream out;
+   // manifest: The list of files and their time ranges, only written when files are rolled
+   private PrintWriter manifest;
+   // part: The number of the current file
+   private int part;
+   // rows: The number of rows in the current file
+   private long rows;
+   // bytes: The number of bytes in the current file
+   private long bytes;
+   // firstRow: The first row of the current file
+   private int firstRow;
+   // lastRow: The last row written
+   private int lastRow;
+   // files: The files that have been started
+   private List<File> files = new ArrayList<>();
+
+   public RollingWriter(String name, RowFormatter formatter, long maxRows, long maxBytes, double maxHours, int period) throws IOException {
+      this.name = name;
+      this.formatter = formatter;
+      this.maxRows = maxRows;
+      this.maxBytes = maxBytes;
+      this.maxSeconds = (long) (maxHours * 3600);
+      this.period = period;
+      heading = formatter.heading();
+      if (isRolling()){
+         files.add(new File(name + "-manifest.csv"));
+         manifest = new PrintWriter(new FileWriter(name + "-manifest.csv"));
+         manifest.print("File,Start Time,End Time,Rows,Bytes\r\n");
+         manifest.flush();
+      }
+   }
+
+   /*
+    * isRolling: Method that checks if the rows are split into several files
+    */
+   public boolean isRolling(){
+      return maxRows > 0 || maxBytes > 0 || maxSeconds > 0;
+   }
+
+   /*
+    * write: Method that formats and writes a given row
+    */
+   public void write(int row) throws IOException {
+      formatter.reset();
+      formatter.appendRow(row);
+      write(row, formatter.buffer(), 0, formatter.length());
+   }
+
+   /*
+    * write: Method that writes a given row that is already formatted, starting a new file first if the current one is full
+    */
+   public void write(int row, byte[] text, int offset, int length) throws IOException {
+      if (out == null || isFull(row, length))
+         roll(row);
+      out.write(text, offset, length);
+      rows++;
+      bytes += length;
+      lastRow = row;
+   }
+
+   /*
+    * isFull: Method that checks if a given row of a given formatted length must go into a new file
+    */
+   private boolean isFull(int row, int length){
+      if (maxRows > 0 && rows >= maxRows)
+         return true;
+      if (maxBytes > 0 && rows > 0 && bytes + length > maxBytes)
+         return true;
+      if (maxSeconds > 0){
+         long seconds = (long) (row - Dataset.FIRST_ROW) * period;
+         long first = (long) (firstRow - Dataset.FIRST_ROW) * period;
+         return seconds / maxSeconds != first / maxSeconds;
+      }
+      return false;
+   }
+
+   /*
+    * roll: Method that closes the current file and starts the next one at a given row
+    */
+   private void roll(int row) throws IOException {
+      finish();
+      part++;
+      String file = isRolling() ? String.format("%s-%05d.csv", name, part) : name + ".csv";
+      files.add(new File(file));
+      out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+      out.write(heading);
+      rows = 0;
+      bytes = heading.length;
+      firstRow = row;
+   }
+
+   /*
+    * finish: Method that closes the current file and adds it to the manifest
+    */
+   private void finish() throws IOException {
+      if (out == null)
+         return;
+      out.close();
+      out = null;
+      if (manifest != null){
+         String file = String.format("%s-%05d.csv", name.substring(name.lastIndexOf('/') + 1), part);
+         manifest.print(file + "," + formatter.time(firstRow) + "," + formatter.time(lastRow) + "," + rows + "," + bytes + "\r\n");
+         manifest.flush();
+      }
+   }
+
+   /*
+    * flush: Method that writes any buffered rows of the current file to disk
+    */
+   public void flush() throws IOException {
+      if (out != null)
+         out.flush();
+   }
+
+   /*
+    * close: Method that closes the last file and the manifest
+    */
+   public void close() throws IOException {
+      finish();
+      if (manifest != null)
+         manifest.close();
+   }
+
+   /*
+    * delete: Method that closes and removes every file that has been started, for a dataset that is not finished
+    */
+   public void delete(){
+      try {
+         if (out != null)
+            out.close();
+      }
+      catch (IOException e){
+         // The file is removed anyway
+      }
+      out = null;
+      if (manifest != null)
+         manifest.close();
+      for (File file : files)
+         file.delete();
+   }
+}
@@ -0,0 +1,344 @@
+package generator;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+// RowFormatter class writes dataset rows as CSV text into a reusable byte buffer, so rows can be written without creating new objects
+public class RowFormatter {
+
+   // POWERS: The powers of ten that can be stored exactly as doubles
+   private static final double[] POWERS = new double[23];
+   // LONG_POWERS: The powers of ten that fit in a long
+   private static final long[] LONG_POWERS = new long[19];
+   // MAX_DIGITS: The most significant digits that can be written, the digits of a double
+   public static final int MAX_DIGITS = 17;
+
+   static {
+      POWERS[0] = 1;
+      LONG_POWERS[0] = 1;
+      for (int i = 1; i < POWERS.length; i++)
+         POWERS[i] = POWERS[i - 1] * 10;
+      for (int i = 1; i < LONG_POWERS.length; i++)
+         LONG_POWERS[i] = LONG_POWERS[i - 1] * 10;
+   }
+
+   // data: The dataset that rows are formatted from
+   private Dataset data;
+   // start: The TIME of the first row in seconds since 1970
+   private long start;
+   // period: The process period in seconds
+   private int period;
+   // digits: The number of significant digits written for each value (0 for full precision)
+   private int digits;
+   // buffer: The formatted text
+   private byte[] buffer;
+   // length: The number of bytes of the buffer that are used
+   private int length;
+   // scratch: Space for the digits of a number before they are added to the buffer
+   private byte[] scratch;
+   // tags: The column names as CSV text, for the long format (null for the wide format)
+   private byte[][] tags;
+
+   public RowFormatter(Dataset data, String startDate, int period, int digits){
+      this(data, startDate, period, digits, false);
+   }
+
+   /*
+    * In the long format each value is a TIME, TAG, VALUE line of its own, and the empty values between the samples of a column are left out
+    */
+   public RowFormatter(Dataset data, String startDate, int period, int digits, boolean longFormat){
+      this.data = data;
+      this.period = period;
+      this.digits = digits;
+      DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss");
+      start = LocalDateTime.parse(startDate + " 00:00:00", formatter).toEpochSecond(ZoneOffset.UTC);
+      buffer = new byte[64 * data.columns()];
+      scratch = new byte[20];
+      if (longFormat){
+         // The names are quoted once here, instead of for every value
+         tags = new byte[data.columns() + 1][];
+         for (int col = 2; col <= data.columns(); col++)
+            tags[col] = CSVFormat.DEFAULT.format(data.name(col)).getBytes();
+      }
+   }
+
+   /*
+    * isLong: Method that checks if the rows are formatted as TIME, TAG, VALUE lines
+    */
+   public boolean isLong(){
+      return tags != null;
+   }
+
+   /*
+    * heading: Method that returns the name and description rows of the dataset as CSV text
+    */
+   public byte[] heading() throws IOException {
+      // The long format only has one heading row, the names are on every line and the descriptions are left out
+      if (isLong())
+         return "TIME,TAG,VALUE\r\n".getBytes();
+      StringBuilder text = new StringBuilder();
+      CSVPrinter printer = new CSVPrinter(text, CSVFormat.DEFAULT);
+      for (int col = 1; col <= data.columns(); col++){
+         if (col == 1 || data.isWritten(col))
+            printer.print(data.name(col));
+      }
+      printer.println();
+      for (int col = 1; col <= data.columns(); col++){
+         if (col == 1 || data.isWritten(col))
+            printer.print(data.description(col));
+      }
+      printer.println();
+      return text.toString().getBytes();
+   }
+
+   /*
+    * reset: Method that empties the buffer
+    */
+   public void reset(){
+      length = 0;
+   }
+
+   /*
+    * length: Method that returns the number of formatted bytes in the buffer
+    */
+   public int length(){
+      return length;
+   }
+
+   /*
+    * buffer: Method that returns the buffer, only the first length() bytes are formatted text
+    */
+   public byte[] buffer(){
+      return buffer;
+   }
+
+   /*
+    * writeTo: Method that writes the formatted text to a given stream
+    */
+   public void writeTo(OutputStream out) throws IOException {
+      out.write(buffer, 0, length);
+   }
+
+   /*
+    * time: Method that returns the TIME of a given row as text
+    */
+   public String time(int row){
+      int end = length;
+      appendTime(row);
+      String text = new String(buffer, end, length - end);
+      length = end;
+      return text;
+   }
+
+   /*
+    * appendRow: Method that adds a given dataset row to the buffer, starting with its TIME and ending with a line break
+    * In the long format the row is a line for each column with a sample on the row, in column order
+    */
+   public void appendRow(int row){
+      if (isLong()){
+         for (int col = 2; col <= data.columns(); col++){
+            if (data.isWritten(col) && data.isSample(row, col))
+               appendSample(row, col);
+         }
+         return;
+      }
+      appendTime(row);
+      for (int col = 2; col <= data.columns(); col++){
+         if (!data.isWritten(col))
+            continue;
+         append(',');
+         // Rows between the samples of a column are left empty
+         if (data.isSample(row, col))
+            appendValue(data.get(row, col));
+      }
+      append('\r');
+      append('\n');
+   }
+
+   /*
+    * appendSample: Method that adds the TIME, TAG, VALUE line of a given row and column in the long format, an empty value adds nothing
+    */
+   public void appendSample(int row, int col){
+      double value = data.get(row, col);
+      if (Double.isNaN(value))
+         return;
+      appendTime(row);
+      append(',');
+      for (byte b : tags[col])
+         append(b);
+      append(',');
+      appendValue(value);
+      append('\r');
+      append('\n');
+   }
+
+   /*
+    * appendTime: Method that adds the TIME of a given row in the MM/dd/yy HH:mm:ss format
+    * The date is calculated from the day count directly (days to civil date algorithm by Howard Hinnant)
+    */
+   private void appendTime(int row){
+      long seconds = start + (long) (row - Dataset.FIRST_ROW) * period;
+      long days = Math.floorDiv(seconds, 86400);
+      int time = Math.floorMod(seconds, 86400);
+      long z = days + 719468;
+      long era = Math.floorDiv(z, 146097);
+      long dayOfEra = z - era * 146097;
+      long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+      long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+      long monthIndex = (5 * dayOfYear + 2) / 153;
+      int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+      int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+      long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+      appendTwo(month);
+      append('/');
+      appendTwo(day);
+      append('/');
+      appendTwo(Math.floorMod(year, 100));
+      append(' ');
+      appendTwo(time / 3600);
+      append(':');
+      appendTwo(time / 60 % 60);
+      append(':');
+      appendTwo(time % 60);
+   }
+
+   /*
+    * appendValue: Method that adds a given value, an empty value (NaN) adds nothing
+    */
+   private void appendValue(double value){
+      if (Double.isNaN(value))
+         return;
+      if (digits > 0 && !Double.isInfinite(value)){
+         appendSignificant(value);
+         return;
+      }
+      // Values are written with the shortest text that reads back as the same value, float32 values as the same float
+      if (length + NumberFormatter.MAX_CHARS > buffer.length)
+         buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + NumberFormatter.MAX_CHARS));
+      if (data.isSingle())
+         length = NumberFormatter.format((float) value, buffer, length);
+      else
+         length = NumberFormatter.format(value, buffer, length);
+   }
+
+   /*
+    * appendSignificant: Method that adds a given value rounded to the significant digits, without trailing zeros or an exponent
+    */
+   private void appendSignificant(double value){
+      if (value == 0){
+         append('0');
+         return;
+      }
+      if (value < 0){
+         append('-');
+         value = -value;
+      }
+      // shift: The power of ten that scales the value to a whole number with the significant digits
+      int shift = digits - 1 - (int) Math.floor(Math.log10(value));
+      long scaled = scale(value, shift);
+      // The logarithm can be off by one, which gives one digit too many or too few
+      if (scaled >= LONG_POWERS[digits]){
+         shift--;
+         scaled = scale(value, shift);
+      }
+      else if (scaled >= 0 && scaled < LONG_POWERS[digits - 1]){
+         shift++;
+         scaled = scale(value, shift);
+      }
+      if (scaled <= 0){
+         // Values that are out of range or too close to halfway are rare, so they are rounded the slower way
+         appendText(new BigDecimal(value).round(new MathContext(digits)).stripTrailingZeros().toPlainString());
+         return;
+      }
+      while (scaled > 0 && scaled % 10 == 0){
+         scaled = scaled / 10;
+         shift--;
+      }
+      int count = 0;
+      while (scaled > 0){
+         scratch[count++] = (byte) ('0' + scaled % 10);
+         scaled = scaled / 10;
+      }
+      // The digits are in reverse order in the scratch space
+      if (shift <= 0){
+         for (int i = count - 1; i >= 0; i--)
+            append(scratch[i]);
+         for (int i = 0; i < -shift; i++)
+            append('0');
+      }
+      else if (shift >= count){
+         append('0');
+         append('.');
+         for (int i = 0; i < shift - count; i++)
+            append('0');
+         for (int i = count - 1; i >= 0; i--)
+            append(scratch[i]);
+      }
+      else{
+         for (int i = count - 1; i >= 0; i--){
+            append(scratch[i]);
+            if (i == shift)
+               append('.');
+         }
+      }
+   }
+
+   /*
+    * scale: Method that multiplies a given value by a power of ten and rounds it to a whole number
+    * Returns -1 if the value is out of range, or if it is so close to halfway that the rounding of the multiplication could change the result
+    */
+   private long scale(double value, int shift){
+      double scaled;
+      if (shift >= 0 && shift < POWERS.length)
+         scaled = value * POWERS[shift];
+      else if (shift < 0 && -shift < POWERS.length)
+         scaled = value / POWERS[-shift];
+      else if (shift >= POWERS.length && shift - (POWERS.length - 1) < POWERS.length)
+         scaled = value * POWERS[POWERS.length - 1] * POWERS[shift - (POWERS.length - 1)];
+      else
+         return -1;
+      if (scaled >= LONG_POWERS[17])
+         return -1;
+      double fraction = scaled - Math.floor(scaled);
+      if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled))
+         return -1;
+      return Math.round(scaled);
+   }
+
+   /*
+    * appendTwo: Method that adds a given number as two digits
+    */
+   private void appendTwo(int value){
+      append((byte) ('0' + value / 10));
+      append((byte) ('0' + value % 10));
+   }
+
+   /*
+    * appendText: Method that adds the characters of a given text
+    */
+   private void appendText(String text){
+      for (int i = 0; i < text.length(); i++)
+         append((byte) text.charAt(i));
+   }
+
+   /*
+    * append: Method that adds a single character to the buffer, growing it when it is full
+    */
+   private void append(char c){
+      append((byte) c);
+   }
+
+   private void append(byte b){
+      if (length == buffer.length)
+         buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      buffer[length++] = b;
+   }
+}
@@ -0,0 +1,163 @@
+package generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+// RowPipeline class passes blocks of rows through a sequence of stages, each on its own thread, with a bounded queue between a stage and the next
+// A stage works on one block while the stage before it works on a later block, and the queues limit how far the first stage gets ahead of the last
+public class RowPipeline {
+
+   // DEPTH: The number of blocks that can wait between two stages
+   private static final int DEPTH = 2;
+   // WAIT_MILLIS: How often a stage waiting on a queue checks if another stage has failed
+   private static final int WAIT_MILLIS = 50;
+
+   // Stage interface is a step that every block of rows goes through, in row order
+   interface Stage {
+      /*
+       * run: Method that works on a given block of rows
+       */
+      void run(Block block) throws IOException;
+   }
+
+   // Block class is a block of rows on its way through the stages
+   static class Block {
+      // first: The first row of the block
+      int first;
+      // last: The last row of the block
+      int last;
+      // draws: The count of random numbers drawn before the state variables of each row, set by the first stage
+      long[] draws;
+   }
+
+   // END: Passed on after the last block
+   private static final Block END = new Block();
+
+   // error: The first error of any stage, which stops the other stages
+   private volatile Throwable error;
+
+   /*
+    * inFlight: Method that returns how many rows the first of a given number of stages can be ahead of the first row of the last stage's block
+    */
+   static int inFlight(int stages, int blockRows){
+      return (stages * (DEPTH + 1) + 1) * blockRows;
+   }
+
+   /*
+    * run: Method that passes the rows from a given first to last row through the given stages, in blocks of a given number of rows
+    * The last stage runs on the calling thread, and an error or cancel in any stage is thrown here once every stage has stopped
+    */
+   public void run(int firstRow, int lastRow, int blockRows, Stage... stages) throws IOException {
+      List<BlockingQueue<Block>> queues = new ArrayList<>();
+      for (int i = 0; i < stages.length - 1; i++)
+         queues.add(new ArrayBlockingQueue<>(DEPTH));
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < stages.length - 1; i++){
+         int stage = i;
+         Thread thread = new Thread(() -> {
+            try {
+               loop(stages[stage], stage == 0 ? null : queues.get(stage - 1), queues.get(stage), firstRow, lastRow, blockRows);
+            }
+            catch (Throwable e){
+               fail(e);
+            }
+         }, "Pipeline stage " + (i + 1));
+         thread.setDaemon(true);
+         threads.add(thread);
+         thread.start();
+      }
+      try {
+         int last = stages.length - 1;
+         loop(stages[last], last == 0 ? null : queues.get(last - 1), null, firstRow, lastRow, blockRows);
+      }
+      catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+         fail(new CancellationException("Generation cancelled"));
+      }
+      catch (Throwable e){
+         fail(e);
+      }
+      finally {
+         // No stage may still be using the rows once this returns
+         for (Thread thread : threads)
+            thread.interrupt();
+         for (Thread thread : threads){
+            while (thread.isAlive()){
+               try {
+                  thread.join();
+               }
+               catch (InterruptedException e){
+                  Thread.currentThread().interrupt();
+               }
+            }
+         }
+      }
+      if (error instanceof IOException)
+         throw (IOException) error;
+      if (error instanceof RuntimeException)
+         throw (RuntimeException) error;
+      if (error instanceof Error)
+         throw (Error) error;
+      if (error != null)
+         throw new IOException(error);
+   }
+
+   // loop: Method for running a given stage on each block from the queue before it, or on new blocks for the first stage, passing them to the queue after it
+   private void loop(Stage stage, BlockingQueue<Block> in, BlockingQueue<Block> out, int firstRow, int lastRow, int blockRows) throws IOException, InterruptedException {
+      long next = firstRow;
+      while (true){
+         Block block;
+         if (in == null){
+            if (next > lastRow)
+               block = END;
+            else {
+               block = new Block();
+               block.first = (int) next;
+               block.last = (int) Math.min(next + blockRows - 1, lastRow);
+               next = block.last + 1L;
+            }
+         }
+         else {
+            block = take(in);
+            if (block == null)
+               return;
+         }
+         if (block != END)
+            stage.run(block);
+         if (out != null && !put(out, block))
+            return;
+         if (block == END)
+            return;
+      }
+   }
+
+   // take: Method for taking the next block from a given queue, null once another stage has failed
+   private Block take(BlockingQueue<Block> queue) throws InterruptedException {
+      while (error == null){
+         Block block = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+         if (block != null)
+            return block;
+      }
+      return null;
+   }
+
+   // put: Method for adding a block to a given queue, false once another stage has failed
+   private boolean put(BlockingQueue<Block> queue, Block block) throws InterruptedException {
+      while (error == null){
+         if (queue.offer(block, WAIT_MILLIS, TimeUnit.MILLISECONDS))
+            return true;
+      }
+      return false;
+   }
+
+   // fail: Method for keeping the first error of any stage
+   private synchronized void fail(Throwable e){
+      if (error == null)
+         error = e;
+   }
+}
@@ -0,0 +1,179 @@
+package generator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+// Summary class works out the statistics of each written column in one pass as the rows are written, and writes them to a JSON file alongside the dataset,
+// so a dataset can be checked without reading it again. Only the sample rows of a column are counted, and an empty sample is counted as missing
+public class Summary {
+
+   // QUANTILES: The quantiles written for each column
+   private static final double[] QUANTILES = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+   // RELATIVE_ERROR: The relative error of the quantiles
+   private static final double RELATIVE_ERROR = 0.005;
+
+   // data: The dataset that rows are summarised from
+   private Dataset data;
+   // formatter: The formatter of the TIME of the first and last rows
+   private RowFormatter formatter;
+   // columns: The dataset columns that are summarised, the written columns apart from TIME
+   private int[] columns;
+   // low, high: The Min and Max of each dataset column in its configuration (NaN for none)
+   private double[] low;
+   private double[] high;
+   // firstRow, lastRow: The first and last rows added (0 before the first row)
+   private int firstRow;
+   private int lastRow;
+   // rows: The number of rows added
+   private long rows;
+   // samples: The number of sample rows of each column
+   private long[] samples;
+   // count: The number of values of each column, the sample rows that are not empty
+   private long[] count;
+   // mean, m2: The mean of the values of each column and the sum of their squared differences from it (Welford's method)
+   private double[] mean;
+   private double[] m2;
+   // min, max: The smallest and largest value of each column
+   private double[] min;
+   private double[] max;
+   // outside: The number of values of each column that are outside of its Min and Max
+   private long[] outside;
+   // sketches: The quantile sketch of each column
+   private QuantileSketch[] sketches;
+
+   /*
+    * Summary: Constructor that summarises the written columns of a given dataset, given the start date and process period of its TIME column
+    */
+   public Summary(Dataset data, String startDate, int period){
+      this.data = data;
+      formatter = new RowFormatter(data, startDate, period, 0);
+      columns = new int[data.columns()];
+      int written = 0;
+      for (int col = 2; col <= data.columns(); col++){
+         if (data.isWritten(col))
+            columns[written++] = col;
+      }
+      columns = Arrays.copyOf(columns, written);
+      low = new double[data.columns() + 1];
+      high = new double[data.columns() + 1];
+      Arrays.fill(low, Double.NaN);
+      Arrays.fill(high, Double.NaN);
+      samples = new long[written];
+      count = new long[written];
+      mean = new double[written];
+      m2 = new double[written];
+      min = new double[written];
+      max = new double[written];
+      outside = new long[written];
+      sketches = new QuantileSketch[written];
+      for (int c = 0; c < written; c++)
+         sketches[c] = new QuantileSketch(RELATIVE_ERROR);
+   }
+
+   /*
+    * setRange: Method that sets the Min and Max of a given dataset column, the values outside of them are counted
+    */
+   public void setRange(int col, double low, double high){
+      this.low[col] = low;
+      this.high[col] = high;
+   }
+
+   /*
+    * add: Method that adds the samples of a given row
+    */
+   public void add(int row){
+      if (rows == 0)
+         firstRow = row;
+      lastRow = row;
+      rows++;
+      for (int c = 0; c < columns.length; c++){
+         int col = columns[c];
+         if (!data.isSample(row, col))
+            continue;
+         samples[c]++;
+         double value = data.get(row, col);
+         if (Double.isNaN(value))
+            continue;
+         count[c]++;
+         if (count[c] == 1){
+            min[c] = value;
+            max[c] = value;
+         }
+         else {
+            min[c] = Math.min(min[c], value);
+            max[c] = Math.max(max[c], value);
+         }
+         double delta = value - mean[c];
+         mean[c] += delta / count[c];
+         m2[c] += delta * (value - mean[c]);
+         if (value < low[col] || value > high[col])
+            outside[c]++;
+         sketches[c].add(value);
+      }
+   }
+
+   /*
+    * write: Method that writes the summary to a JSON file given its name and the seed of the dataset
+    * Each column has its sample rows, its values and the number that are missing, the mean, variance, standard deviation, min, max and quantiles
+    * of its values, its Min and Max and the number of values outside of them. A statistic without any values is written as null
+    */
+   public void write(String file, long seed) throws IOException {
+      try (PrintWriter out = new PrintWriter(new FileWriter(file))){
+         out.print("{\n");
+         out.print("  \"seed\": " + seed + ",\n");
+         out.print("  \"rows\": " + rows + ",\n");
+         out.print("  \"first\": " + text(rows > 0 ? formatter.time(firstRow) : null) + ",\n");
+         out.print("  \"last\": " + text(rows > 0 ? formatter.time(lastRow) : null) + ",\n");
+         out.print("  \"columns\": [");
+         for (int c = 0; c < columns.length; c++){
+            int col = columns[c];
+            boolean values = count[c] > 0;
+            out.print(c == 0 ? "\n" : ",\n");
+            out.print("    {\n");
+            out.print("      \"name\": " + text(data.name(col)) + ",\n");
+            out.print("      \"description\": " + text(data.description(col)) + ",\n");
+            out.print("      \"samples\": " + samples[c] + ",\n");
+            out.print("      \"count\": " + count[c] + ",\n");
+            out.print("      \"missing\": " + (samples[c] - count[c]) + ",\n");
+            out.print("      \"mean\": " + number(values ? mean[c] : Double.NaN) + ",\n");
+            out.print("      \"variance\": " + number(count[c] > 1 ? m2[c] / (count[c] - 1) : Double.NaN) + ",\n");
+            out.print("      \"std\": " + number(count[c] > 1 ? Math.sqrt(m2[c] / (count[c] - 1)) : Double.NaN) + ",\n");
+            out.print("      \"min\": " + number(values ? min[c] : Double.NaN) + ",\n");
+            out.print("      \"max\": " + number(values ? max[c] : Double.NaN) + ",\n");
+            out.print("      \"quantiles\": {");
+            for (int q = 0; q < QUANTILES.length; q++)
+               out.print((q == 0 ? "" : ", ") + "\"" + QUANTILES[q] + "\": " + number(sketches[c].quantile(QUANTILES[q])));
+            out.print("},\n");
+            out.print("      \"low\": " + number(low[col]) + ",\n");
+            out.print("      \"high\": " + number(high[col]) + ",\n");
+            out.print("      \"outside\": " + outside[c] + "\n");
+            out.print("    }");
+         }
+         out.print("\n  ]\n");
+         out.print("}\n");
+      }
+   }
+
+   // number: Method for a given number as JSON, NaN and infinite values are written as null
+   private static String number(double value){
+      return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value);
+   }
+
+   // text: Method for a given text as a JSON string, null is written as null
+   private static String text(String value){
+      if (value == null)
+         return "null";
+      StringBuilder json = new StringBuilder("\"");
+      for (char c : value.toCharArray()){
+         if (c == '"' || c == '\\')
+            json.append('\\').append(c);
+         else if (c < 0x20)
+            json.append(String.format("\\u%04x", (int) c));
+         else
+            json.append(c);
+      }
+      return json.append('"').toString();
+   }
+}
@@ -0,0 +1,52 @@
+package generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+// TaskGraph class runs tasks that depend on each other on a work-stealing pool, each task starting as soon as the tasks it depends on are finished
+public class TaskGraph {
+
+   // pool: The threads that run the tasks, an idle thread takes waiting tasks from the others
+   private ForkJoinPool pool;
+   // tasks: The tasks in the order they were added
+   private List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+   public TaskGraph(int threads){
+      pool = new ForkJoinPool(threads);
+   }
+
+   /*
+    * add: Method that adds a task that runs after the given earlier tasks, returning its number for the tasks that depend on it
+    * The task can start straight away, before the rest of the graph is added
+    */
+   public int add(Runnable task, int... after){
+      CompletableFuture<?>[] before = new CompletableFuture<?>[after.length];
+      for (int i = 0; i < after.length; i++)
+         before[i] = tasks.get(after[i]);
+      tasks.add(CompletableFuture.allOf(before).thenRunAsync(task, pool));
+      return tasks.size() - 1;
+   }
+
+   /*
+    * run: Method that waits for all of the tasks to finish, throwing the exception of a task that failed
+    * The tasks that depend on a failed task are not run
+    */
+   public void run(){
+      try {
+         CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+      }
+      catch (CompletionException e){
+         if (e.getCause() instanceof RuntimeException)
+            throw (RuntimeException) e.getCause();
+         if (e.getCause() instanceof Error)
+            throw (Error) e.getCause();
+         throw e;
+      }
+      finally {
+         pool.shutdown();
+      }
+   }
+}